@@ -6,41 +6,76 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.*;
-import hudson.remoting.VirtualChannel;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serial;
 import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import io.jenkins.plugins.netrise.asset.uploader.api.ChunkStoreClient;
 import io.jenkins.plugins.netrise.asset.uploader.api.Client;
 import io.jenkins.plugins.netrise.asset.uploader.api.ProxyClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.StallPolicy;
+import io.jenkins.plugins.netrise.asset.uploader.api.Timeouts;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
 import io.jenkins.plugins.netrise.asset.uploader.env.EnvMapper;
+import io.jenkins.plugins.netrise.asset.uploader.log.AsyncJobLoggerHandler;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
 import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import io.jenkins.plugins.netrise.asset.uploader.service.AssetDetailsCache;
+import io.jenkins.plugins.netrise.asset.uploader.service.ChunkIndex;
+import io.jenkins.plugins.netrise.asset.uploader.service.Deadline;
+import io.jenkins.plugins.netrise.asset.uploader.service.DirectoryArchive;
+import io.jenkins.plugins.netrise.asset.uploader.service.EndpointPool;
+import io.jenkins.plugins.netrise.asset.uploader.service.TransferWorkers;
+import io.jenkins.plugins.netrise.asset.uploader.service.UplinkStats;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadCallbackRegistry;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadOutbox;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadPipeline;
 import io.jenkins.plugins.netrise.asset.uploader.service.UploadService;
-import jenkins.MasterToSlaveFileCallable;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
+import jenkins.util.VirtualFile;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
-import org.jenkinsci.remoting.RoleChecker;
 import org.kohsuke.stapler.*;
 import org.kohsuke.stapler.verb.POST;
 
 public class AppBuilder extends Builder implements SimpleBuildStep {
+    // the name of the controller node in the uplink stats
+    private static final String BUILT_IN_NODE = "built-in";
 
     private final String artifact;
     private final String name;
     private String model;
     private String version;
     private String manufacturer;
+    private boolean skipUploaded;
+    private boolean enqueue;
+    private boolean archived;
+    private String upstreamJob;
+    private String upstreamBuild;
+    private String downloadUrl;
+    private boolean byReference;
+    private boolean deltaUpload;
 
     @DataBoundConstructor
     public AppBuilder(String artifact, String name) {
@@ -89,42 +124,515 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
         this.manufacturer = manufacturer;
     }
 
+    public boolean isSkipUploaded() {
+        return skipUploaded;
+    }
+
+    @DataBoundSetter
+    public void setSkipUploaded(boolean skipUploaded) {
+        this.skipUploaded = skipUploaded;
+    }
+
+    public boolean isEnqueue() {
+        return enqueue;
+    }
+
+    @DataBoundSetter
+    public void setEnqueue(boolean enqueue) {
+        this.enqueue = enqueue;
+    }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    @DataBoundSetter
+    public void setArchived(boolean archived) {
+        this.archived = archived;
+    }
+
+    public String getUpstreamJob() {
+        return upstreamJob;
+    }
+
+    @DataBoundSetter
+    public void setUpstreamJob(String upstreamJob) {
+        this.upstreamJob = upstreamJob;
+    }
+
+    public String getUpstreamBuild() {
+        return upstreamBuild;
+    }
+
+    @DataBoundSetter
+    public void setUpstreamBuild(String upstreamBuild) {
+        this.upstreamBuild = upstreamBuild;
+    }
+
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    @DataBoundSetter
+    public void setDownloadUrl(String downloadUrl) {
+        this.downloadUrl = downloadUrl;
+    }
+
+    public boolean isByReference() {
+        return byReference;
+    }
+
+    @DataBoundSetter
+    public void setByReference(boolean byReference) {
+        this.byReference = byReference;
+    }
+
+    public boolean isDeltaUpload() {
+        return deltaUpload;
+    }
+
+    @DataBoundSetter
+    public void setDeltaUpload(boolean deltaUpload) {
+        this.deltaUpload = deltaUpload;
+    }
+
+    private boolean isDownloadUrlDefined() {
+        return downloadUrl != null && !downloadUrl.isBlank();
+    }
+
     private String envy(String sentence, EnvVars env) {
         return sentence != null ? EnvMapper.replaceEnv(sentence, env) : null;
     }
 
     protected UploadService getUploadService(DescriptorImpl descriptor) {
-        return new UploadService(
-                URI.create(descriptor.getBaseUrl()),
-                URI.create(descriptor.getTokenUrl()),
-                descriptor.getOrgId(),
-                descriptor.getClientId(),
-                descriptor.getClientSecret().getPlainText(),
-                descriptor.getAudience()
-        );
+        return descriptor.getUploadService();
+    }
+
+    @Override
+    public boolean requiresWorkspace() {
+        return !archived && !isDownloadUrlDefined();
     }
 
     @Override
     public void perform(Run<?, ?> run, FilePath workspace, EnvVars env, Launcher launcher, TaskListener listener)
             throws InterruptedException, IOException {
+        if (!requiresWorkspace()) {
+            perform(run, env, listener);
+            return;
+        }
 
         listener.getLogger().println("\n\n=======================================================================\n");
 
         SubmitAssetInput input = new SubmitAssetInput(envy(name, env), envy(model, env), envy(version, env), envy(manufacturer, env));
         listener.getLogger().println("Asset: " + input);
 
+        DescriptorImpl descriptor = getDescriptor();
+
+        if (isPattern(artifact)) {
+            descriptor.checkGlobalConfig();
+            uploadAll(run, workspace, input, descriptor, listener);
+            return;
+        }
+
         FilePath wsFile = workspace.child(artifact);
         listener.getLogger().println("File to upload: " + wsFile.toURI());
 
+        // check global config
+        descriptor.checkGlobalConfig();
+
+        if (!wsFile.exists()) {
+            throw new RuntimeException("No such file in the workspace: " + wsFile);
+        }
+
+        // the fingerprint is already computed by Jenkins if the artifact is archived with fingerprint
+        Fingerprint fingerprint = NetRiseAssetFacet.lookup(run, artifact, wsFile);
+        if (isUploaded(run, input, fingerprint, descriptor, listener)) {
+            return;
+        }
+
+        boolean directory = wsFile.isDirectory();
+        if (directory) {
+            listener.getLogger().println("The directory is uploaded as a tar archive");
+            if (enqueue) {
+                listener.getLogger().println("The directory is uploaded right away, the background upload is supported for files only");
+            }
+        } else if (enqueue && enqueue(run, wsFile, input, fingerprint, descriptor, listener)) {
+            return;
+        }
+
+        if (deltaUpload) {
+            if (directory) {
+                listener.getLogger().println("The directory is uploaded as a whole, the delta upload is supported for files only");
+            } else if (!descriptor.isChunkStoreEnabled()) {
+                listener.getLogger().println("The chunk store is not configured, the whole file is uploaded");
+            } else {
+                uploadDelta(run, wsFile, input, fingerprint, descriptor, listener);
+                return;
+            }
+        }
+
+        // the API calls are made on the controller, the agent only sends the file
+        String fileName = directory ? wsFile.getName() + DirectoryArchive.EXTENSION : wsFile.getName();
+        // the archive differs from the fingerprinted directory content so its MD5 isn't known
+        String contentMd5 = !directory && fingerprint != null ? fingerprint.getHashString() : null;
+        String node = getNodeName(workspace);
+        upload(run, input, fingerprint, descriptor, listener, fileName, (uploadUri, console) -> {
+            TransferResult result = wsFile.act(new TransferFileCallable(uploadUri, contentMd5,
+                    descriptor.getTimeouts().uploadIdle(), descriptor.getStallPolicy(), console));
+            descriptor.recordTransfer(node, result);
+            return result;
+        });
+    }
+
+    /**
+     * Return the name of the node the workspace is on
+     * */
+    private static String getNodeName(FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        return computer == null || computer.getName().isEmpty() ? BUILT_IN_NODE : computer.getName();
+    }
+
+    /**
+     * Send only the chunks of the file not sent with the previous builds of the asset to the chunk store
+     * and submit the file assembled by the store to NetRise by reference
+     * */
+    private void uploadDelta(Run<?, ?> run, FilePath wsFile, SubmitAssetInput input, Fingerprint fingerprint,
+                             DescriptorImpl descriptor, TaskListener listener) throws IOException, InterruptedException {
+        URI storeUri = URI.create(descriptor.getChunkStoreUrl());
+        ChunkIndex index = descriptor.getChunkIndex();
+        String lineage = descriptor.getOrgId() + "/" + input.name();
+
+        DeltaUploadCallable.Result delta = wsFile.act(new DeltaUploadCallable(storeUri, index.load(lineage)));
+        listener.getLogger().printf("Sent %d of %d chunks, %d of %d bytes in %d ms (SHA-256: %s)%n",
+                delta.sentChunks(), delta.chunks().size(), delta.sentBytes(), delta.size(),
+                delta.durationMillis(), delta.sha256());
+        index.add(lineage, delta.chunks());
+
+        URI fileUri = new ChunkStoreClient(storeUri).getFileUri(delta.sha256());
+        AtomicReference<TransferResult> transferred = new AtomicReference<>(new TransferResult(
+                200, delta.sentBytes(), delta.sha256(), null, null, delta.durationMillis()));
+        upload(run, input, fingerprint, descriptor, listener,
+                (service, console) -> service.upload(wsFile.getName(), input, fileUri, descriptor.newDeadline()),
+                transferred);
+    }
+
+    /**
+     * Return true if the artifact is an Ant-style pattern or a comma-separated list of paths
+     * */
+    private static boolean isPattern(String artifact) {
+        return artifact.indexOf('*') >= 0 || artifact.indexOf('?') >= 0 || artifact.indexOf(',') >= 0;
+    }
+
+    /**
+     * Upload all the workspace files matching the artifact pattern.
+     * The files go through {@link UploadPipeline}: the next files are submitted while the current one is sent
+     * and the upload status is checked while the next files are sent.
+     * Every file becomes a separate asset named after the file path.
+     * */
+    private void uploadAll(Run<?, ?> run, FilePath workspace, SubmitAssetInput input, DescriptorImpl descriptor,
+                           TaskListener listener) throws IOException, InterruptedException {
+        FilePath[] files = workspace.list(artifact);
+        if (files.length == 0) {
+            throw new RuntimeException("No files in the workspace match: " + artifact);
+        }
+        listener.getLogger().println("Files to upload: " + files.length);
+        if (enqueue) {
+            listener.getLogger().println("The matched files are uploaded right away, the background upload is supported for a single file only");
+        }
+
+        // the lines of the step and the progress of the transfers go to the console in order with the log records
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(listener.getLogger());
+        TaskListener console = new StreamTaskListener(handler.getConsole(), StandardCharsets.UTF_8);
+        UploadService service = getUploadService(descriptor);
+        List<Fingerprint> fingerprints = new ArrayList<>();
+        List<UploadPipeline.Result> results;
+        try {
+            List<UploadPipeline.Job> jobs = new ArrayList<>();
+            Duration idleTimeout = descriptor.getTimeouts().uploadIdle();
+            StallPolicy stallPolicy = descriptor.getStallPolicy();
+            String node = getNodeName(workspace);
+            for (FilePath file : files) {
+                String path = file.getRemote().substring(workspace.getRemote().length() + 1).replace('\\', '/');
+                SubmitAssetInput fileInput = new SubmitAssetInput(input.name() + " - " + path, input.model(),
+                        input.version(), input.manufacturer());
+                console.getLogger().println("File to upload: " + path);
+
+                Fingerprint fingerprint = NetRiseAssetFacet.lookup(run, path, file);
+                if (isUploaded(run, fileInput, fingerprint, descriptor, console)) {
+                    continue;
+                }
+                String contentMd5 = fingerprint != null ? fingerprint.getHashString() : null;
+                jobs.add(new UploadPipeline.Job(file.getName(), fileInput,
+                        uploadUri -> {
+                            TransferResult result = file.act(new TransferFileCallable(uploadUri, contentMd5,
+                                    idleTimeout, stallPolicy, console));
+                            descriptor.recordTransfer(node, result);
+                            return result;
+                        }));
+                fingerprints.add(fingerprint);
+            }
+            if (jobs.isEmpty()) {
+                return;
+            }
+
+            UploadPipeline pipeline = new UploadPipeline(service);
+            long threadId = Thread.currentThread().getId();
+            handler.setFilter(r -> r.getLongThreadID() == threadId || pipeline.isPipelineThread(r.getLongThreadID()));
+            Logger.addHandler(handler);
+            try {
+                results = pipeline.upload(jobs, descriptor::newDeadline);
+            } finally {
+                Logger.removeHandler(handler);
+            }
+        } finally {
+            handler.close();
+        }
+
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            UploadPipeline.Result result = results.get(i);
+            if (result.isSuccessful()) {
+                descriptor.recordUpload(service, result.transfer());
+                listener.getLogger().println("Asset is uploaded: " + result.job().input().name());
+                uploaded(run, result.job().input(), fingerprints.get(i), descriptor, result.assetId(),
+                        result.transfer() != null ? result.transfer().sha256() : null);
+            } else {
+                failed++;
+                if (result.error() != null) {
+                    descriptor.recordFailure(service, result.error());
+                }
+                listener.error("Couldn't upload " + result.job().input().name() + ": "
+                        + (result.error() != null ? result.error().getMessage() : "no asset is created"));
+            }
+        }
+        if (failed > 0) {
+            throw new RuntimeException("Couldn't upload " + failed + " of " + results.size() + " files");
+        }
+    }
+
+    /**
+     * Upload the archived artifact or submit the download url. No workspace or agent is needed:
+     * the artifact is streamed from the artifact manager straight to the upload url
+     * or downloaded by NetRise itself.
+     * */
+    @Override
+    public void perform(Run<?, ?> run, EnvVars env, TaskListener listener) throws InterruptedException, IOException {
+        listener.getLogger().println("\n\n=======================================================================\n");
+
+        SubmitAssetInput input = new SubmitAssetInput(envy(name, env), envy(model, env), envy(version, env), envy(manufacturer, env));
+        listener.getLogger().println("Asset: " + input);
+
         DescriptorImpl descriptor = getDescriptor();
 
         // check global config
         descriptor.checkGlobalConfig();
 
+        if (isDownloadUrlDefined()) {
+            URI url = URI.create(envy(downloadUrl, env));
+            // the url may contain a signature so only the host is printed
+            listener.getLogger().println("File to upload by reference: " + url.getHost());
+            String fileName = artifact.substring(artifact.replace('\\', '/').lastIndexOf('/') + 1);
+            upload(run, input, null, descriptor, listener,
+                    service -> service.upload(fileName, input, url, descriptor.newDeadline()));
+            return;
+        }
+
+        Run<?, ?> source = getArchiveRun(run, env);
+        VirtualFile file = source.getArtifactManager().root().child(artifact);
+        listener.getLogger().println("Archived file to upload: " + source.getFullDisplayName() + " / " + artifact);
+
+        if (!file.isFile()) {
+            throw new RuntimeException("No such archived artifact: " + artifact + " in " + source.getFullDisplayName());
+        }
+
+        Fingerprint fingerprint = NetRiseAssetFacet.lookup(source, artifact);
+        if (isUploaded(run, input, fingerprint, descriptor, listener)) {
+            return;
+        }
+
+        if (enqueue) {
+            listener.getLogger().println("The archived artifact is uploaded right away, the background upload is not needed");
+        }
+
+        if (byReference) {
+            URL external = file.toExternalURL();
+            if (external != null) {
+                listener.getLogger().println("The archived artifact is submitted by reference");
+                URI url = URI.create(external.toExternalForm());
+                upload(run, input, fingerprint, descriptor, listener,
+                        service -> service.upload(file.getName(), input, url, descriptor.newDeadline()));
+                return;
+            }
+            listener.getLogger().println("The artifact storage doesn't provide download urls, the artifact is streamed");
+        }
+
+        long size = file.length();
+        String contentMd5 = fingerprint != null ? fingerprint.getHashString() : null;
+        upload(run, input, fingerprint, descriptor, listener, file.getName(), (uploadUri, console) -> {
+            TransferClient transferClient = new TransferClient(descriptor.getTimeouts().uploadIdle(), file.getName(),
+                    console.getLogger());
+            transferClient.setStallPolicy(descriptor.getStallPolicy());
+            TransferResult result = TransferWorkers.get().transfer(size,
+                    () -> transferClient.put(uploadUri, file::open, size, contentMd5));
+            descriptor.recordTransfer(BUILT_IN_NODE, result);
+            return result;
+        });
+    }
+
+    /**
+     * Return the build which artifacts should be uploaded: this build or the upstream one
+     * */
+    private Run<?, ?> getArchiveRun(Run<?, ?> run, EnvVars env) {
+        if (upstreamJob == null || upstreamJob.isBlank()) {
+            return run;
+        }
+        String jobName = envy(upstreamJob, env);
+        Job<?, ?> job = Jenkins.get().getItemByFullName(jobName, Job.class);
+        if (job == null) {
+            throw new RuntimeException("No such job: " + jobName);
+        }
+        Run<?, ?> source;
+        if (upstreamBuild == null || upstreamBuild.isBlank()) {
+            source = job.getLastSuccessfulBuild();
+        } else {
+            String number = envy(upstreamBuild, env);
+            try {
+                source = job.getBuildByNumber(Integer.parseInt(number.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Parameter 'upstreamBuild' should be a build number: " + number);
+            }
+        }
+        if (source == null) {
+            throw new RuntimeException("No such build of the job " + jobName
+                    + (upstreamBuild != null && !upstreamBuild.isBlank() ? ": " + upstreamBuild : ""));
+        }
+        return source;
+    }
+
+    /**
+     * Check if the fingerprinted file is already uploaded and add the recorded asset to the build
+     * */
+    private boolean isUploaded(Run<?, ?> run, SubmitAssetInput input, Fingerprint fingerprint,
+                               DescriptorImpl descriptor, TaskListener listener) throws IOException {
+        if (fingerprint == null) {
+            return false;
+        }
+        listener.getLogger().println("Fingerprint: " + fingerprint.getHashString());
+        NetRiseAssetFacet uploaded = skipUploaded ? NetRiseAssetFacet.find(fingerprint, descriptor.getOrgId(), input) : null;
+        if (uploaded != null) {
+            listener.getLogger().println("The artifact is already uploaded. Asset ID: " + uploaded.getAssetId());
+            NetRiseUploadsAction.record(run, input.name(), uploaded.getAssetId(), null);
+            return true;
+        }
+        return false;
+    }
+
+    private void upload(Run<?, ?> run, SubmitAssetInput input, Fingerprint fingerprint, DescriptorImpl descriptor,
+                        TaskListener listener, String fileName, ConsoleTransfer transfer) throws IOException {
+        AtomicReference<TransferResult> transferred = new AtomicReference<>();
+        upload(run, input, fingerprint, descriptor, listener, (service, console) -> service.upload(fileName, input, uploadUri -> {
+            TransferResult result = transfer.transfer(uploadUri, console);
+            console.getLogger().printf("Transferred %d bytes in %d ms (SHA-256: %s)%n",
+                    result.size(), result.durationMillis(), result.sha256());
+            transferred.set(result);
+            return result;
+        }, descriptor.newDeadline()), transferred);
+    }
+
+    private void upload(Run<?, ?> run, SubmitAssetInput input, Fingerprint fingerprint, DescriptorImpl descriptor,
+                        TaskListener listener, Function<UploadService, String> call) throws IOException {
+        upload(run, input, fingerprint, descriptor, listener, (service, console) -> call.apply(service),
+                new AtomicReference<>());
+    }
+
+    /**
+     * @param call The upload, its console lines (e.g. the transfer progress) go through the step console
+     * @param transferred The last transfer of the file, it stays empty if the file is submitted by reference
+     * */
+    private void upload(Run<?, ?> run, SubmitAssetInput input, Fingerprint fingerprint, DescriptorImpl descriptor,
+                        TaskListener listener, BiFunction<UploadService, TaskListener, String> call,
+                        AtomicReference<TransferResult> transferred) throws IOException {
         UploadService service = getUploadService(descriptor);
 
-        // upload the artifact
-        wsFile.act(new UploadFileCallable(service, input, listener, run));
+        // the upload thread logs into the build console without waiting for the remote stream,
+        // the lines of the step go through the same handler to keep the order
+        long threadId = Thread.currentThread().getId();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(listener.getLogger());
+        handler.setFilter(r -> UploadService.getOwnerThreadId(r.getLongThreadID()) == threadId);
+        TaskListener console = new StreamTaskListener(handler.getConsole(), StandardCharsets.UTF_8);
+        Logger.addHandler(handler);
+
+        String assetId;
+        try {
+            assetId = call.apply(service, console);
+            descriptor.recordUpload(service, transferred.get());
+        } catch (RuntimeException e) {
+            // the next uploads go to another endpoint if this one is degraded
+            descriptor.recordFailure(service, e);
+            throw e;
+        } finally {
+            Logger.removeHandler(handler);
+            handler.close();
+        }
+
+        if (assetId != null && !assetId.isBlank()) {
+            listener.getLogger().println("Asset is uploaded");
+            TransferResult result = transferred.get();
+            uploaded(run, input, fingerprint, descriptor, assetId, result != null ? result.sha256() : null);
+        }
+    }
+
+    /**
+     * Sends the file bytes to the upload url, the progress goes to the console of the step
+     * */
+    @FunctionalInterface
+    private interface ConsoleTransfer {
+        TransferResult transfer(URI uploadUri, TaskListener console) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Record the uploaded asset on the fingerprint and the build
+     * */
+    private void uploaded(Run<?, ?> run, SubmitAssetInput input, Fingerprint fingerprint, DescriptorImpl descriptor,
+                          String assetId, String sha256) throws IOException {
+        if (fingerprint != null) {
+            NetRiseAssetFacet.record(fingerprint, descriptor.getOrgId(), input, assetId);
+        }
+
+        // add to the uploads page, the build is saved when it is finished
+        NetRiseUploadsAction.record(run, input.name(), assetId, sha256);
+    }
+
+    /**
+     * Store the file in the outbox to be uploaded by {@link OutboxDrainWork}
+     *
+     * @return false if the file can't be queued and should be uploaded right away
+     * */
+    private boolean enqueue(Run<?, ?> run, FilePath wsFile, SubmitAssetInput input, Fingerprint fingerprint,
+                            DescriptorImpl descriptor, TaskListener listener) throws IOException, InterruptedException {
+        UploadOutbox outbox = OutboxDrainWork.getOutbox();
+        String id = UUID.randomUUID().toString();
+        Path target = outbox.reserve(id, wsFile.length(), descriptor.getOutboxQuota() * 1024 * 1024);
+        if (target == null) {
+            listener.getLogger().println("NetRise outbox quota is exceeded, the file is uploaded right away");
+            return false;
+        }
+
+        try {
+            if (wsFile.isRemote()) {
+                wsFile.copyTo(new FilePath(target.toFile()));
+            } else {
+                // the workspace is on the controller: a copy, not a link, so the build can still change its file
+                Files.copy(Path.of(wsFile.getRemote()), target);
+            }
+            outbox.save(UploadOutbox.Entry.create(id, run.getExternalizableId(), wsFile.getName(), input,
+                    fingerprint != null ? fingerprint.getHashString() : null));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            outbox.release(id);
+            throw e;
+        }
+        listener.getLogger().println("The file is queued for upload: " + id);
+        return true;
     }
 
     @Override
@@ -137,12 +645,39 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
         private static final Set<String> httpSchemas = Set.of("http", "https");
 
+        public static final int DEFAULT_OUTBOX_CONCURRENCY = 2;
+        public static final int DEFAULT_OUTBOX_MAX_RETRIES = 10;
+        public static final long DEFAULT_OUTBOX_QUOTA = 10 * 1024; // 10 GB
+        public static final int DEFAULT_CALLBACK_TIMEOUT = 120; // 2 minutes
+        public static final String CHUNK_INDEX_DIR = "netrise-chunks";
+
         private String orgId;
         private String baseUrl;
         private String tokenUrl;
+        private String additionalEndpoints;
         private String clientId;
         private Secret clientSecret;
         private String audience;
+        private int outboxConcurrency;
+        private int outboxMaxRetries;
+        private long outboxQuota;
+        private Secret callbackSecret;
+        private int callbackTimeout;
+        private boolean statusSubscription;
+        private String chunkStoreUrl;
+        private int connectTimeout;
+        private int authTimeout;
+        private int graphqlTimeout;
+        private int uploadIdleTimeout;
+        private int uploadMinThroughput;
+        private int uploadStallTime;
+        private int uploadDeadline;
+        private boolean hedgedStatus;
+
+        private transient EndpointPool endpointPool;
+        private transient AssetDetailsCache assetDetailsCache;
+        private transient ChunkIndex chunkIndex;
+        private final transient UplinkStats uplinkStats = new UplinkStats();
 
         public DescriptorImpl() {
             load();
@@ -163,6 +698,7 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
         @Override
         public boolean configure(StaplerRequest2 req, JSONObject json) {
             req.bindJSON(this, json);
+            resetUploadService();
             save();
             return true;
         }
@@ -192,12 +728,144 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
             }
         }
 
+        /**
+         * Return the service of the fastest healthy endpoint. The services are shared by all the builds,
+         * so the API clients, their connections and tokens are reused.
+         * They are recreated when the configuration is changed.
+         * */
+        public UploadService getUploadService() {
+            return getEndpointPool().select().getService();
+        }
+
+        /**
+         * Return the endpoint and the additional ones with their services and stats
+         * */
+        public synchronized EndpointPool getEndpointPool() {
+            if (endpointPool == null) {
+                List<EndpointPool.Endpoint> endpoints = new ArrayList<>();
+                endpoints.add(newEndpoint(getBaseUrl(), getTokenUrl()));
+                for (String[] endpoint : parseEndpoints(additionalEndpoints)) {
+                    endpoints.add(newEndpoint(endpoint[0], endpoint.length > 1 ? endpoint[1] : getTokenUrl()));
+                }
+                endpointPool = new EndpointPool(endpoints);
+            }
+            return endpointPool;
+        }
+
+        private EndpointPool.Endpoint newEndpoint(String baseUrl, String tokenUrl) {
+            UploadService service = new UploadService(
+                    URI.create(baseUrl),
+                    URI.create(tokenUrl),
+                    getOrgId(),
+                    getClientId(),
+                    getClientSecret().getPlainText(),
+                    getAudience()
+            );
+            if (isCallbackEnabled()) {
+                service.setCallbacks(UploadCallbackRegistry.get(), getCallbackTimeout() * 1000L);
+            }
+            if (statusSubscription) {
+                service.enableStatusSubscription(UploadCallbackRegistry.get(), getCallbackTimeout() * 1000L);
+            }
+            service.setTimeouts(getTimeouts());
+            service.setStallPolicy(getStallPolicy());
+            service.setHedgedStatus(hedgedStatus);
+            return new EndpointPool.Endpoint(URI.create(baseUrl), service);
+        }
+
+        /**
+         * Split the additional endpoints: one per line, the endpoint url and optionally its token url
+         * */
+        private static List<String[]> parseEndpoints(String value) {
+            if (value == null) {
+                return List.of();
+            }
+            return value.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(line -> line.split("\\s+"))
+                    .toList();
+        }
+
+        /**
+         * Return the stats of the endpoints in use, empty until the first upload or probe
+         * */
+        public synchronized List<EndpointPool.Endpoint> getEndpointStats() {
+            return endpointPool != null ? endpointPool.getEndpoints() : List.of();
+        }
+
+        /**
+         * Record the upload on the endpoint of the service, the pool is not created for that
+         * */
+        synchronized void recordUpload(UploadService service, TransferResult transfer) {
+            if (endpointPool != null) {
+                endpointPool.uploaded(service, transfer);
+            }
+        }
+
+        /**
+         * Return the transfer counters of the nodes the files are sent from
+         * */
+        public List<UplinkStats.Node> getUplinkStats() {
+            return uplinkStats.getNodes();
+        }
+
+        /**
+         * Record the transfer throughput of the node
+         * */
+        void recordTransfer(String node, TransferResult transfer) {
+            uplinkStats.record(node, transfer);
+        }
+
+        /**
+         * Record the failed upload, the endpoint is degraded after some network or API errors
+         * */
+        synchronized void recordFailure(UploadService service, Throwable error) {
+            if (endpointPool != null) {
+                endpointPool.failed(service, error);
+            }
+        }
+
+        private synchronized void resetUploadService() {
+            if (endpointPool != null) {
+                endpointPool.close();
+            }
+            endpointPool = null;
+            if (assetDetailsCache != null) {
+                assetDetailsCache.clear();
+            }
+        }
+
+        /**
+         * Return the cache of the asset details shown on the build pages
+         * */
+        public synchronized AssetDetailsCache getAssetDetailsCache() {
+            if (assetDetailsCache == null) {
+                assetDetailsCache = new AssetDetailsCache(assetId -> {
+                    checkGlobalConfig();
+                    return getUploadService().getAssetDetails(assetId);
+                });
+            }
+            return assetDetailsCache;
+        }
+
+        /**
+         * Return the hashes of the chunks sent to the chunk store, shared by all the builds
+         * */
+        public synchronized ChunkIndex getChunkIndex() {
+            if (chunkIndex == null) {
+                chunkIndex = new ChunkIndex(new File(Jenkins.get().getRootDir(), CHUNK_INDEX_DIR).toPath());
+            }
+            return chunkIndex;
+        }
+
         public String getOrgId() {
             return orgId;
         }
 
         public void setOrgId(String orgId) {
             this.orgId = orgId;
+            resetUploadService();
         }
 
         public String getBaseUrl() {
@@ -206,6 +874,7 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
 
         public void setBaseUrl(String baseUrl) {
             this.baseUrl = baseUrl;
+            resetUploadService();
         }
 
         public String getClientId() {
@@ -214,6 +883,7 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
 
         public void setClientId(String clientId) {
             this.clientId = clientId;
+            resetUploadService();
         }
 
         public Secret getClientSecret() {
@@ -222,6 +892,7 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
 
         public void setClientSecret(Secret clientSecret) {
             this.clientSecret = clientSecret;
+            resetUploadService();
         }
 
         public String getAudience() {
@@ -230,6 +901,7 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
 
         public void setAudience(String audience) {
             this.audience = audience;
+            resetUploadService();
         }
 
         public String getTokenUrl() {
@@ -238,6 +910,226 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
 
         public void setTokenUrl(String tokenUrl) {
             this.tokenUrl = tokenUrl;
+            resetUploadService();
+        }
+
+        /**
+         * Return the endpoints used besides the main one, one per line: the endpoint url and optionally its token url
+         * */
+        public String getAdditionalEndpoints() {
+            return additionalEndpoints;
+        }
+
+        public void setAdditionalEndpoints(String additionalEndpoints) {
+            this.additionalEndpoints = additionalEndpoints;
+            resetUploadService();
+        }
+
+        /**
+         * Return the number of the queued files uploaded at the same time
+         * */
+        public int getOutboxConcurrency() {
+            return outboxConcurrency > 0 ? outboxConcurrency : DEFAULT_OUTBOX_CONCURRENCY;
+        }
+
+        public void setOutboxConcurrency(int outboxConcurrency) {
+            this.outboxConcurrency = outboxConcurrency;
+        }
+
+        /**
+         * Return the number of attempts to upload the queued file
+         * */
+        public int getOutboxMaxRetries() {
+            return outboxMaxRetries > 0 ? outboxMaxRetries : DEFAULT_OUTBOX_MAX_RETRIES;
+        }
+
+        public void setOutboxMaxRetries(int outboxMaxRetries) {
+            this.outboxMaxRetries = outboxMaxRetries;
+        }
+
+        /**
+         * Return the max size of the outbox in MB
+         * */
+        public long getOutboxQuota() {
+            return outboxQuota > 0 ? outboxQuota : DEFAULT_OUTBOX_QUOTA;
+        }
+
+        public void setOutboxQuota(long outboxQuota) {
+            this.outboxQuota = outboxQuota;
+        }
+
+        public Secret getCallbackSecret() {
+            return callbackSecret;
+        }
+
+        public void setCallbackSecret(Secret callbackSecret) {
+            this.callbackSecret = callbackSecret;
+            resetUploadService();
+        }
+
+        /**
+         * Return true if the builds wait for the upload callbacks
+         * */
+        public boolean isCallbackEnabled() {
+            return callbackSecret != null && !callbackSecret.getPlainText().isBlank();
+        }
+
+        /**
+         * Return the time in seconds to wait for the upload callback before the status is polled
+         * */
+        public int getCallbackTimeout() {
+            return callbackTimeout > 0 ? callbackTimeout : DEFAULT_CALLBACK_TIMEOUT;
+        }
+
+        public void setCallbackTimeout(int callbackTimeout) {
+            this.callbackTimeout = callbackTimeout;
+            resetUploadService();
+        }
+
+        public boolean isStatusSubscription() {
+            return statusSubscription;
+        }
+
+        public void setStatusSubscription(boolean statusSubscription) {
+            this.statusSubscription = statusSubscription;
+            resetUploadService();
+        }
+
+        public String getChunkStoreUrl() {
+            return chunkStoreUrl;
+        }
+
+        public void setChunkStoreUrl(String chunkStoreUrl) {
+            this.chunkStoreUrl = chunkStoreUrl;
+        }
+
+        /**
+         * Return true if the delta uploads can be sent to the chunk store
+         * */
+        public boolean isChunkStoreEnabled() {
+            return chunkStoreUrl != null && !chunkStoreUrl.isBlank();
+        }
+
+        /**
+         * Return the timeouts of the request phases, the default ones are used for the fields that are not set
+         * */
+        public Timeouts getTimeouts() {
+            Timeouts defaults = Timeouts.DEFAULT;
+            return new Timeouts(
+                    connectTimeout > 0 ? Duration.ofSeconds(connectTimeout) : defaults.connect(),
+                    authTimeout > 0 ? Duration.ofSeconds(authTimeout) : defaults.auth(),
+                    graphqlTimeout > 0 ? Duration.ofSeconds(graphqlTimeout) : defaults.graphql(),
+                    uploadIdleTimeout > 0 ? Duration.ofSeconds(uploadIdleTimeout) : defaults.uploadIdle());
+        }
+
+        /**
+         * Return when the upload with the collapsed throughput is restarted, the defaults are used for the fields that are not set
+         * */
+        public StallPolicy getStallPolicy() {
+            StallPolicy defaults = StallPolicy.DEFAULT;
+            return new StallPolicy(
+                    uploadMinThroughput > 0 ? uploadMinThroughput * 1024L : defaults.minBytesPerSecond(),
+                    uploadStallTime > 0 ? Duration.ofSeconds(uploadStallTime) : defaults.window(),
+                    defaults.maxRestarts());
+        }
+
+        /**
+         * Return the deadline of the upload starting now, it never expires if the deadline is not set
+         * */
+        public Deadline newDeadline() {
+            return Deadline.after(Duration.ofMinutes(uploadDeadline));
+        }
+
+        /**
+         * Return the time in seconds to connect to the endpoints, 0 for the default
+         * */
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            resetUploadService();
+        }
+
+        /**
+         * Return the time in seconds to wait for the access token, 0 for the default
+         * */
+        public int getAuthTimeout() {
+            return authTimeout;
+        }
+
+        public void setAuthTimeout(int authTimeout) {
+            this.authTimeout = authTimeout;
+            resetUploadService();
+        }
+
+        /**
+         * Return the time in seconds to wait for the GraphQL response, 0 for the default
+         * */
+        public int getGraphqlTimeout() {
+            return graphqlTimeout;
+        }
+
+        public void setGraphqlTimeout(int graphqlTimeout) {
+            this.graphqlTimeout = graphqlTimeout;
+            resetUploadService();
+        }
+
+        /**
+         * Return the time in seconds the upload may make no progress, 0 for the default
+         * */
+        public int getUploadIdleTimeout() {
+            return uploadIdleTimeout;
+        }
+
+        public void setUploadIdleTimeout(int uploadIdleTimeout) {
+            this.uploadIdleTimeout = uploadIdleTimeout;
+            resetUploadService();
+        }
+
+        /**
+         * Return the throughput floor of the upload in KB/s, 0 for the default
+         * */
+        public int getUploadMinThroughput() {
+            return uploadMinThroughput;
+        }
+
+        public void setUploadMinThroughput(int uploadMinThroughput) {
+            this.uploadMinThroughput = uploadMinThroughput;
+            resetUploadService();
+        }
+
+        /**
+         * Return the time in seconds the upload throughput may stay below the floor, 0 for the default
+         * */
+        public int getUploadStallTime() {
+            return uploadStallTime;
+        }
+
+        public void setUploadStallTime(int uploadStallTime) {
+            this.uploadStallTime = uploadStallTime;
+            resetUploadService();
+        }
+
+        /**
+         * Return the time in minutes the whole upload may take, 0 for no deadline
+         * */
+        public int getUploadDeadline() {
+            return uploadDeadline;
+        }
+
+        public void setUploadDeadline(int uploadDeadline) {
+            this.uploadDeadline = uploadDeadline;
+        }
+
+        public boolean isHedgedStatus() {
+            return hedgedStatus;
+        }
+
+        public void setHedgedStatus(boolean hedgedStatus) {
+            this.hedgedStatus = hedgedStatus;
+            resetUploadService();
         }
 
         @POST
@@ -266,6 +1158,29 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
             return FormValidation.ok();
         }
 
+        @POST
+        public FormValidation doCheckAdditionalEndpoints(@QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            for (String[] endpoint : parseEndpoints(value)) {
+                if (endpoint.length > 2 || !Arrays.stream(endpoint).allMatch(this::isValidUrl)) {
+                    return FormValidation.warning("Each line should contain the endpoint url and optionally the token url: "
+                            + String.join(" ", endpoint));
+                }
+            }
+
+            return FormValidation.ok();
+        }
+
+        @POST
+        public FormValidation doCheckChunkStoreUrl(@QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            if (!value.isBlank() && !isValidUrl(value)) {
+                return FormValidation.warning("The URL should be valid");
+            }
+
+            return FormValidation.ok();
+        }
+
         @POST
         public FormValidation doTestConnection(@QueryParameter("tokenUrl") final String tokenUrl,
                                                @QueryParameter("orgId") final String orgId,
@@ -298,39 +1213,4 @@ public class AppBuilder extends Builder implements SimpleBuildStep {
             return "NetRise Plugin";
         }
     }
-
-    private static class UploadFileCallable extends MasterToSlaveFileCallable<Void> {
-        @Serial
-        private static final long serialVersionUID = 3179220848351167640L;
-
-        private final UploadService service;
-        private final SubmitAssetInput input;
-        private final TaskListener listener;
-        private final Run<?, ?> run;
-
-        public UploadFileCallable(UploadService service, SubmitAssetInput input, TaskListener listener, Run<?, ?> run) {
-            this.service = service;
-            this.input = input;
-            this.listener = listener;
-            this.run = run;
-        }
-
-        @Override
-        public Void invoke(File file, VirtualChannel channel) {
-            if (!file.exists()) {
-                throw new RuntimeException("No such file in the workspace: " + file);
-            }
-
-            String assetId = service.upload(file.toPath(), input);
-
-            if (assetId != null && !assetId.isBlank()) {
-                listener.getLogger().println("Asset is uploaded");
-
-                // create detail page
-                run.addAction(new SimpleAction(input.name(), assetId));
-            }
-
-            return null;
-        }
-    }
 }
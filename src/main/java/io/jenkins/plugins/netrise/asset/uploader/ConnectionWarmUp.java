@@ -0,0 +1,90 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.service.EndpointPool;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Warm up the shared upload service when the controller starts: the hosts are resolved, the token is requested
+ * and the connections to the token url and the endpoint are opened, so the first builds after a restart
+ * don't pay for them. Then a cheap request keeps the connections open and the token is renewed before it expires.
+ * The keep-alive requests can be disabled with the {@code keepAlive} system property.
+ * When there are additional endpoints, the same requests probe all of them, see {@link EndpointPool}.
+ * */
+@Extension
+public class ConnectionWarmUp extends AsyncPeriodicWork {
+    private static final Logger log = Logger.getLogger(ConnectionWarmUp.class);
+
+    public static final boolean KEEP_ALIVE = Boolean.parseBoolean(
+            System.getProperty(ConnectionWarmUp.class.getName() + ".keepAlive", "true"));
+
+    private static final long PERIOD = MIN;
+
+    // the token should outlive the next keep-alive, so a build never waits for it
+    private static final long MIN_TOKEN_VALIDITY = 3 * PERIOD;
+
+    public ConnectionWarmUp() {
+        super("NetRise connection warm-up");
+    }
+
+    /**
+     * Run the warm-up in background once the global configuration is loaded
+     * */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void warmUpOnStartup() {
+        Timer.get().submit(() -> {
+            if (warmUp()) {
+                log.info("NetRise connections are ready");
+            }
+        });
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        if (KEEP_ALIVE || hasAdditionalEndpoints()) {
+            warmUp();
+        }
+    }
+
+    /**
+     * The endpoints are probed even without the keep-alive, the upload endpoint is selected by their health and latency
+     * */
+    private static boolean hasAdditionalEndpoints() {
+        AppBuilder.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(AppBuilder.DescriptorImpl.class);
+        return descriptor != null && descriptor.getAdditionalEndpoints() != null
+                && !descriptor.getAdditionalEndpoints().isBlank();
+    }
+
+    /**
+     * @return false if the plugin is not configured or the endpoints are not available
+     * */
+    private static boolean warmUp() {
+        AppBuilder.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(AppBuilder.DescriptorImpl.class);
+        if (descriptor == null) {
+            return false;
+        }
+        try {
+            descriptor.checkGlobalConfig();
+        } catch (RuntimeException e) {
+            // not configured yet
+            return false;
+        }
+        try {
+            return descriptor.getEndpointPool().probe(MIN_TOKEN_VALIDITY);
+        } catch (RuntimeException e) {
+            log.warn("NetRise warm-up is failed:", e.getMessage());
+            return false;
+        }
+    }
+}
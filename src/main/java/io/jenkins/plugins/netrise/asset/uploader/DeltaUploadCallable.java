@@ -0,0 +1,205 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.netrise.asset.uploader.api.BufferPool;
+import io.jenkins.plugins.netrise.asset.uploader.api.ChunkStoreClient;
+import io.jenkins.plugins.netrise.asset.uploader.model.ChunkManifest;
+import io.jenkins.plugins.netrise.asset.uploader.service.FastCdc;
+import io.jenkins.plugins.netrise.asset.uploader.service.TransferWorkers;
+import io.jenkins.plugins.netrise.asset.uploader.service.TreeHasher;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Send only the new chunks of the file and its manifest to the chunk store from the node where the file is located.
+ * The file is split with {@link FastCdc} and the chunks are hashed with {@link TreeHasher},
+ * so a firmware build differing from the previous one in a few places shares most of its chunks with it. The chunks known to the controller are not sent.
+ * If the store misses some of them (e.g. they are purged), the store answers with the missing list
+ * and they are sent with the manifest again.
+ * */
+class DeltaUploadCallable extends MasterToSlaveFileCallable<DeltaUploadCallable.Result> {
+    @Serial
+    private static final long serialVersionUID = 6039218227468351304L;
+
+    private final URI store;
+    private final Set<String> known;
+
+    /**
+     * @param store The chunk store url
+     * @param known Hashes of the chunks already sent to the store
+     * */
+    DeltaUploadCallable(URI store, Set<String> known) {
+        this.store = store;
+        this.known = new HashSet<>(known);
+    }
+
+    @Override
+    public Result invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        if (!file.isFile()) {
+            throw new RuntimeException("No such file in the workspace: " + file);
+        }
+
+        // the file is read and sent by one of the upload workers of the node
+        return TransferWorkers.get().transfer(file.length(), () -> upload(file));
+    }
+
+    private Result upload(File file) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        // the file is read once before it is sent: the chunks are hashed on all the cores while the boundaries are found
+        TreeHasher.Digest digest = new TreeHasher().digest(file.toPath(), new FastCdc(), true);
+        List<Integer> lengths = digest.lengths();
+
+        List<ChunkManifest.Chunk> chunks = new ArrayList<>();
+        Map<String, Long> positions = new HashMap<>();
+        long position = 0;
+        for (int i = 0; i < lengths.size(); i++) {
+            String hash = digest.leaves().get(i);
+            chunks.add(new ChunkManifest.Chunk(hash, lengths.get(i)));
+            positions.putIfAbsent(hash, position);
+            position += lengths.get(i);
+        }
+
+        ChunkStoreClient client = new ChunkStoreClient(store);
+        Sender sender = new Sender(file, client, chunks, positions);
+        try (sender) {
+            for (ChunkManifest.Chunk chunk : chunks) {
+                if (!known.contains(chunk.sha256())) {
+                    sender.send(chunk.sha256());
+                }
+            }
+
+            ChunkManifest manifest = new ChunkManifest(file.getName(), digest.size(), digest.sha256(), chunks);
+            List<String> missing = client.putManifest(manifest);
+            if (!missing.isEmpty()) {
+                // the store lost some chunks known to the controller: send them and try once again
+                for (String hash : missing) {
+                    sender.resend(hash);
+                }
+                missing = client.putManifest(manifest);
+                if (!missing.isEmpty()) {
+                    throw new RuntimeException("The chunk store doesn't accept the manifest, missing chunks: " + missing.size());
+                }
+            }
+        }
+
+        return new Result(digest.sha256(), digest.size(), digest.leaves(), sender.sent.size(), sender.sentBytes,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Read the chunks from the file and put them to the store, every chunk is sent once
+     * */
+    private static class Sender implements AutoCloseable {
+        private final RandomAccessFile raf;
+        private final ChunkStoreClient client;
+        private final BufferPool pool = BufferPool.get();
+        private final Map<String, Integer> lengths = new HashMap<>();
+        private final Map<String, Long> positions;
+        private final Set<String> sent = new HashSet<>();
+        private long sentBytes;
+
+        Sender(File file, ChunkStoreClient client, List<ChunkManifest.Chunk> chunks, Map<String, Long> positions)
+                throws IOException {
+            this.raf = new RandomAccessFile(file, "r");
+            this.client = client;
+            this.positions = positions;
+            chunks.forEach(c -> lengths.putIfAbsent(c.sha256(), c.length()));
+        }
+
+        void send(String hash) throws IOException {
+            if (!sent.contains(hash)) {
+                resend(hash);
+            }
+        }
+
+        void resend(String hash) throws IOException {
+            Long position = positions.get(hash);
+            if (position == null) {
+                throw new RuntimeException("The chunk store requested an unknown chunk: " + hash);
+            }
+            int length = lengths.get(hash);
+            if (length <= pool.getBufferSize()) {
+                putPooled(hash, position, length);
+            } else {
+                byte[] data = new byte[length];
+                raf.seek(position);
+                raf.readFully(data);
+                client.putChunk(hash, data, 0, data.length);
+            }
+            sent.add(hash);
+            sentBytes += length;
+        }
+
+        /**
+         * Send the chunk from a buffer of the pool, so the concurrent uploads of the node stay within its budget
+         * */
+        private void putPooled(String hash, long position, int length) throws IOException {
+            ByteBuffer buffer;
+            try {
+                buffer = pool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Waiting for a buffer is interrupted");
+            }
+            buffer.limit(length);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (raf.getChannel().read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("The file is truncated while it is sent");
+                    }
+                }
+            } catch (IOException e) {
+                pool.release(buffer);
+                throw e;
+            }
+            boolean accepted = false;
+            try {
+                client.putChunk(hash, buffer.flip());
+                accepted = true;
+            } finally {
+                if (accepted) {
+                    pool.release(buffer);
+                } else {
+                    // a failed request may still refer to the buffer, it's not reused
+                    pool.discard(buffer);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /**
+     * Result of the delta upload, returned from the agent to the controller
+     *
+     * @param sha256 SHA-256 of the whole file
+     * @param size The file size
+     * @param chunks Chunk hashes in the file order
+     * @param sentChunks Number of the chunks sent to the store
+     * @param sentBytes Number of the bytes sent to the store
+     * @param durationMillis Upload time in milliseconds
+     * */
+    record Result(String sha256, long size, List<String> chunks, int sentChunks, long sentBytes,
+                  long durationMillis) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,178 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.FilePath;
+import hudson.model.Fingerprint;
+import hudson.model.Run;
+import hudson.tasks.Fingerprinter;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import jenkins.model.FingerprintFacet;
+import jenkins.model.Jenkins;
+import jenkins.util.VirtualFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fingerprint facet with the NetRise asset created from the fingerprinted file.
+ * The fingerprint MD5 is already known by Jenkins (e.g. after {@code archiveArtifacts(fingerprint: true)}),
+ * so it is used as the key to find the assets uploaded before without reading the file again.
+ * The same file may be uploaded as different assets, so the asset name and version are the part of the key.
+ * */
+public class NetRiseAssetFacet extends FingerprintFacet {
+    private static final Logger log = Logger.getLogger(NetRiseAssetFacet.class);
+
+    private final String orgId;
+    private final String name;
+    private final String version;
+    private final String assetId;
+
+    public NetRiseAssetFacet(Fingerprint fingerprint, long timestamp, String orgId, String name, String version,
+                             String assetId) {
+        super(fingerprint, timestamp);
+        this.orgId = orgId;
+        this.name = name;
+        this.version = version;
+        this.assetId = assetId;
+    }
+
+    public String getOrgId() {
+        return orgId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getAssetId() {
+        return assetId;
+    }
+
+    private boolean matches(String orgId, SubmitAssetInput input) {
+        return orgId != null && orgId.equals(this.orgId)
+                && Objects.equals(input.name(), name) && Objects.equals(input.version(), version);
+    }
+
+    /**
+     * Find the fingerprint recorded by the build for the artifact
+     *
+     * @param run The build
+     * @param artifact The artifact path relative to the workspace
+     *
+     * @return The fingerprint or null if the artifact isn't fingerprinted
+     * */
+    public static Fingerprint lookup(Run<?, ?> run, String artifact) {
+        Fingerprinter.FingerprintAction action = run.getAction(Fingerprinter.FingerprintAction.class);
+        if (action == null || artifact == null) {
+            return null;
+        }
+        String md5 = null;
+        String path = normalize(artifact);
+        for (Map.Entry<String, String> record : action.getRecords().entrySet()) {
+            if (path.equals(normalize(record.getKey()))) {
+                md5 = record.getValue();
+                break;
+            }
+        }
+        if (md5 == null) {
+            return null;
+        }
+        try {
+            return Jenkins.get().getFingerprintMap().get(md5);
+        } catch (IOException e) {
+            log.warn("Couldn't load the fingerprint", md5, e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Find the fingerprint recorded by the build for the artifact if the workspace file is still the archived one.
+     * The file may be changed after it is archived (e.g. rebuilt by the next step), then its MD5 is not known.
+     *
+     * @param run The build
+     * @param artifact The artifact path relative to the workspace
+     * @param file The workspace file
+     *
+     * @return The fingerprint or null if the artifact isn't fingerprinted or the file is changed
+     * */
+    public static Fingerprint lookup(Run<?, ?> run, String artifact, FilePath file) throws IOException, InterruptedException {
+        Fingerprint fingerprint = lookup(run, artifact);
+        if (fingerprint == null) {
+            return null;
+        }
+        VirtualFile archived = run.getArtifactManager().root().child(normalize(artifact));
+        // the archive keeps the modification time in seconds
+        if (!archived.isFile() || archived.length() != file.length()
+                || file.lastModified() / 1000 > archived.lastModified() / 1000) {
+            log.info("The file is changed after it was fingerprinted", artifact);
+            return null;
+        }
+        return fingerprint;
+    }
+
+    private static String normalize(String path) {
+        String value = path.replace('\\', '/');
+        while (value.startsWith("./")) {
+            value = value.substring(2);
+        }
+        return value;
+    }
+
+    /**
+     * Return the latest asset uploaded to the organization from the fingerprinted file
+     *
+     * @param fingerprint The fingerprint
+     * @param orgId Organization ID
+     * @param input The asset, matched by name and version
+     *
+     * @return The facet or null if there is no such asset
+     * */
+    public static NetRiseAssetFacet find(Fingerprint fingerprint, String orgId, SubmitAssetInput input) {
+        NetRiseAssetFacet found = null;
+        synchronized (fingerprint) {
+            for (FingerprintFacet facet : fingerprint.getFacets()) {
+                if (facet instanceof NetRiseAssetFacet assetFacet && assetFacet.matches(orgId, input)
+                        && (found == null || found.getTimestamp() < assetFacet.getTimestamp())) {
+                    found = assetFacet;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Record the uploaded asset in the fingerprint, replacing the asset recorded before for the same input
+     *
+     * @param fingerprint The fingerprint
+     * @param orgId Organization ID
+     * @param input The asset
+     * @param assetId Asset ID
+     * */
+    public static void record(Fingerprint fingerprint, String orgId, SubmitAssetInput input, String assetId) {
+        try {
+            synchronized (fingerprint) {
+                List<FingerprintFacet> replaced = new ArrayList<>();
+                for (FingerprintFacet facet : fingerprint.getFacets()) {
+                    if (facet instanceof NetRiseAssetFacet assetFacet && assetFacet.matches(orgId, input)) {
+                        replaced.add(facet);
+                    }
+                }
+                for (FingerprintFacet facet : replaced) {
+                    fingerprint.getFacets().remove(facet);
+                }
+                fingerprint.getFacets().add(new NetRiseAssetFacet(fingerprint, System.currentTimeMillis(), orgId,
+                        input.name(), input.version(), assetId));
+                fingerprint.save();
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't save the fingerprint", fingerprint.getHashString(), e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.model.Run;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import jenkins.model.RunAction2;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * All the assets uploaded by the build.
+ * Only the number of uploads goes to {@code build.xml}, the uploads are stored in the sidecar file
+ * in the build directory and are loaded when the page is opened.
+ * The loaded list is softly referenced, so it doesn't stay in memory with every loaded build.
+ * */
+public class NetRiseUploadsAction implements RunAction2 {
+    private static final Logger log = Logger.getLogger(NetRiseUploadsAction.class);
+
+    public static final String UPLOADS_FILE = "netrise-uploads.json";
+    public static final int PAGE_SIZE = 50;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private int count;
+    private transient Run<?, ?> run;
+    private transient SoftReference<List<Upload>> uploads;
+
+    /**
+     * Add the uploaded asset to the build
+     *
+     * @param run The build
+     * @param name Asset name
+     * @param assetId Asset ID
+     * @param sha256 SHA-256 of the uploaded bytes, nullable
+     *
+     * @return true if the action is created and the build should be saved to keep it
+     * */
+    public static boolean record(Run<?, ?> run, String name, String assetId, String sha256) throws IOException {
+        synchronized (NetRiseUploadsAction.class) {
+            NetRiseUploadsAction action = run.getAction(NetRiseUploadsAction.class);
+            boolean created = action == null;
+            if (created) {
+                action = new NetRiseUploadsAction();
+                action.run = run;
+            }
+            action.add(new Upload(name, assetId, sha256, System.currentTimeMillis()));
+            if (created) {
+                run.addAction(action);
+            }
+            return created;
+        }
+    }
+
+    private synchronized void add(Upload upload) throws IOException {
+        List<Upload> list = new ArrayList<>(load());
+        list.add(upload);
+        Path file = getFile().toPath();
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(UPLOADS_FILE + ".tmp");
+        mapper.writeValue(tmp.toFile(), list);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        uploads = new SoftReference<>(Collections.unmodifiableList(list));
+        count = list.size();
+    }
+
+    private File getFile() {
+        return new File(run.getRootDir(), UPLOADS_FILE);
+    }
+
+    /**
+     * Return the uploads of the build, read from the sidecar file if they aren't loaded yet
+     * */
+    public synchronized List<Upload> getUploads() {
+        return load();
+    }
+
+    private List<Upload> load() {
+        List<Upload> list = uploads != null ? uploads.get() : null;
+        if (list != null) {
+            return list;
+        }
+        File file = getFile();
+        list = List.of();
+        if (file.isFile()) {
+            try {
+                list = Collections.unmodifiableList(mapper.readValue(file, new TypeReference<List<Upload>>() {}));
+            } catch (IOException e) {
+                log.warn("Couldn't read the uploads of the build", file, e.getLocalizedMessage());
+            }
+        }
+        uploads = new SoftReference<>(list);
+        return list;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Return the page of the uploads
+     *
+     * @param page Page number starting with 1, the first page if it is not a number
+     * @param sort Sort column: name, assetId or time (default)
+     * @param order "desc" for the descending order
+     * */
+    public Page getPage(String page, String sort, String order) {
+        String column = sort != null && Upload.COLUMNS.contains(sort) ? sort : "time";
+        boolean descending = "desc".equals(order);
+
+        Comparator<Upload> comparator = switch (column) {
+            case "name" -> Comparator.comparing(Upload::name, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            case "assetId" -> Comparator.comparing(Upload::assetId, Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> Comparator.comparingLong(Upload::time);
+        };
+        List<Upload> sorted = new ArrayList<>(getUploads());
+        sorted.sort(descending ? comparator.reversed() : comparator);
+
+        int pages = Math.max(1, (sorted.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        int number;
+        try {
+            number = page != null ? Integer.parseInt(page) : 1;
+        } catch (NumberFormatException e) {
+            number = 1;
+        }
+        number = Math.min(Math.max(number, 1), pages);
+
+        int from = (number - 1) * PAGE_SIZE;
+        List<Upload> items = sorted.subList(from, Math.min(from + PAGE_SIZE, sorted.size()));
+        return new Page(items, number, pages, sorted.size(), column, descending);
+    }
+
+    /**
+     * Return the details of the uploaded asset, bound to {@code asset/<assetId>} url
+     * */
+    public SimpleAction getAsset(String assetId) {
+        for (Upload upload : getUploads()) {
+            if (upload.assetId() != null && upload.assetId().equals(assetId)) {
+                SimpleAction action = new SimpleAction(upload.name(), upload.assetId(), upload.sha256());
+                action.onAttached(run);
+                return action;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "document.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Netrise Uploads";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "netriseUploads";
+    }
+
+    /**
+     * Uploaded asset
+     *
+     * @param name Asset name
+     * @param assetId Asset ID
+     * @param sha256 SHA-256 of the uploaded bytes, null if the file is not sent by the plugin
+     * @param time Upload time
+     * */
+    public record Upload(String name, String assetId, String sha256, long time) {
+        static final List<String> COLUMNS = List.of("name", "assetId", "time");
+
+        @JsonIgnore
+        public Date getDate() {
+            return new Date(time);
+        }
+    }
+
+    /**
+     * Page of the uploads
+     *
+     * @param items The uploads of the page
+     * @param number Page number starting with 1
+     * @param pages Number of pages
+     * @param total Number of uploads
+     * @param sort Sort column
+     * @param descending Descending order
+     * */
+    public record Page(List<Upload> items, int number, int pages, int total, String sort, boolean descending) {
+
+        /**
+         * Return the query of the link to the page with the same sorting
+         * */
+        public String link(int page) {
+            return "?page=" + page + "&sort=" + sort + "&order=" + (descending ? "desc" : "asc");
+        }
+
+        /**
+         * Return the query of the link sorting by the column, the current column toggles the order
+         * */
+        public String sortLink(String column) {
+            boolean desc = column.equals(sort) && !descending;
+            return "?sort=" + column + "&order=" + (desc ? "desc" : "asc");
+        }
+    }
+}
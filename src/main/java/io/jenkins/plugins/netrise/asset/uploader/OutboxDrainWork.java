@@ -0,0 +1,160 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Fingerprint;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadOutbox;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadService;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload the files queued in the outbox by the builds in the enqueue mode.
+ * The asset is added to the originating build when the upload is finished.
+ * */
+@Extension
+public class OutboxDrainWork extends AsyncPeriodicWork {
+
+    public static final String OUTBOX_DIR = "netrise-outbox";
+
+    private static final long RETRY_DELAY = MIN;
+    private static final long MAX_RETRY_DELAY = HOUR;
+
+    /**
+     * Days the failed uploads are kept in the outbox
+     * */
+    public static final int FAILED_RETENTION_DAYS = Integer.getInteger(OutboxDrainWork.class.getName() + ".failedRetentionDays", 7);
+
+    /**
+     * Max number of the failed uploads kept in the outbox
+     * */
+    public static final int MAX_FAILED = Integer.getInteger(OutboxDrainWork.class.getName() + ".maxFailed", 100);
+
+    public OutboxDrainWork() {
+        super("NetRise upload outbox");
+    }
+
+    /**
+     * Return the outbox located in JENKINS_HOME
+     * */
+    public static UploadOutbox getOutbox() {
+        return new UploadOutbox(new File(Jenkins.get().getRootDir(), OUTBOX_DIR).toPath());
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        UploadOutbox outbox = getOutbox();
+        outbox.cleanup(DAY);
+        outbox.expireFailed(FAILED_RETENTION_DAYS * DAY, MAX_FAILED);
+
+        long now = System.currentTimeMillis();
+        List<UploadOutbox.Entry> ready = outbox.list().stream()
+                .filter(e -> e.nextAttempt() <= now)
+                .toList();
+        if (ready.isEmpty()) {
+            return;
+        }
+
+        AppBuilder.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(AppBuilder.DescriptorImpl.class);
+        try {
+            descriptor.checkGlobalConfig();
+        } catch (RuntimeException e) {
+            listener.getLogger().println("NetRise outbox is not processed: " + e.getMessage());
+            return;
+        }
+
+        listener.getLogger().println("Uploading " + ready.size() + " queued file(s)");
+        ExecutorService executor = Executors.newFixedThreadPool(descriptor.getOutboxConcurrency());
+        try {
+            for (UploadOutbox.Entry entry : ready) {
+                // the endpoint is selected for every file, so a degraded one stops getting the queued files
+                executor.execute(() -> drain(outbox, entry, descriptor.getUploadService(), descriptor, listener));
+            }
+        } finally {
+            executor.shutdown();
+            // the next execution doesn't start until this one is finished
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                listener.getLogger().println("Waiting for the queued uploads...");
+            }
+        }
+    }
+
+    static void drain(UploadOutbox outbox, UploadOutbox.Entry entry, UploadService service,
+                       AppBuilder.DescriptorImpl descriptor, TaskListener listener) {
+        String assetId;
+        try {
+            assetId = service.upload(entry.fileName(), outbox.getFile(entry), entry.input());
+            descriptor.recordUpload(service, null);
+        } catch (RuntimeException e) {
+            descriptor.recordFailure(service, e);
+            retry(outbox, entry, e, descriptor, listener);
+            return;
+        }
+
+        listener.getLogger().println("Queued file is uploaded: " + entry.fileName() + ". Asset ID: " + assetId);
+        try {
+            complete(entry, assetId, descriptor);
+            outbox.remove(entry);
+        } catch (IOException e) {
+            listener.error("Couldn't complete the queued upload " + entry.id() + ": " + e.getMessage());
+        }
+    }
+
+    private static void complete(UploadOutbox.Entry entry, String assetId, AppBuilder.DescriptorImpl descriptor) throws IOException {
+        if (assetId == null || assetId.isBlank()) {
+            return;
+        }
+        if (entry.fingerprint() != null) {
+            Fingerprint fingerprint = Jenkins.get().getFingerprintMap().get(entry.fingerprint());
+            if (fingerprint != null) {
+                NetRiseAssetFacet.record(fingerprint, descriptor.getOrgId(), entry.input(), assetId);
+            }
+        }
+        Run<?, ?> run = entry.runId() != null ? Run.fromExternalizableId(entry.runId()) : null;
+        if (run != null && NetRiseUploadsAction.record(run, entry.input().name(), assetId, null)) {
+            run.save();
+        }
+    }
+
+    private static void retry(UploadOutbox outbox, UploadOutbox.Entry entry, RuntimeException error,
+                              AppBuilder.DescriptorImpl descriptor, TaskListener listener) {
+        long delay = retryDelay(entry.attempts());
+        UploadOutbox.Entry failed = entry.failed(error.getMessage(), System.currentTimeMillis() + delay);
+        try {
+            if (failed.attempts() >= descriptor.getOutboxMaxRetries()) {
+                listener.error("Queued upload " + entry.id() + " failed after " + failed.attempts() + " attempt(s): "
+                        + error.getMessage());
+                outbox.save(failed);
+                outbox.fail(failed);
+            } else {
+                listener.getLogger().println("Queued upload " + entry.id() + " failed, retry in " + delay / 1000 + " s: "
+                        + error.getMessage());
+                outbox.save(failed);
+            }
+        } catch (IOException e) {
+            listener.error("Couldn't update the queued upload " + entry.id() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Return the delay before the next attempt in milliseconds, doubled with every failed attempt
+     *
+     * @param attempts Number of the failed attempts before this one
+     * */
+    static long retryDelay(int attempts) {
+        return Math.min(RETRY_DELAY << Math.min(attempts, 16), MAX_RETRY_DELAY);
+    }
+}
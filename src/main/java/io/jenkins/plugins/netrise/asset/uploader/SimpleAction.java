@@ -1,17 +1,29 @@
 package io.jenkins.plugins.netrise.asset.uploader;
 
 import hudson.model.Run;
+import io.jenkins.plugins.netrise.asset.uploader.model.AssetDetails;
+import jenkins.model.Jenkins;
 import jenkins.model.RunAction2;
 
+/**
+ * Details of the uploaded asset.
+ * It is shown under {@link NetRiseUploadsAction}; the builds made by the older versions have it attached directly.
+ * */
 public class SimpleAction implements RunAction2 {
 
     private final String name;
     private final String assetId;
+    private final String sha256;
     private transient Run<?, ?> run;
 
     public SimpleAction(String name, String assetId) {
+        this(name, assetId, null);
+    }
+
+    public SimpleAction(String name, String assetId, String sha256) {
         this.name = name;
         this.assetId = assetId;
+        this.sha256 = sha256;
     }
 
     public String getName() {
@@ -22,6 +34,26 @@ public class SimpleAction implements RunAction2 {
         return assetId;
     }
 
+    /**
+     * Return SHA-256 of the uploaded bytes, null if the file is not sent by the plugin
+     * */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Return the asset details and analysis status from the API.
+     * They are cached for all the build pages and are not fetched while the build is running.
+     *
+     * @return Asset details, null if they are not available
+     * */
+    public AssetDetails getDetails() {
+        if (run == null || run.isBuilding() || assetId == null) {
+            return null;
+        }
+        return Jenkins.get().getDescriptorByType(AppBuilder.DescriptorImpl.class).getAssetDetailsCache().get(assetId);
+    }
+
     @Override
     public void onAttached(Run<?, ?> run) {
         this.run = run;
@@ -0,0 +1,69 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.netrise.asset.uploader.api.StallPolicy;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import io.jenkins.plugins.netrise.asset.uploader.service.DirectoryArchive;
+import io.jenkins.plugins.netrise.asset.uploader.service.TransferWorkers;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serial;
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Send the file to the presigned upload url from the node where the file is located.
+ * The directory is sent as a tar archive.
+ * Only the url goes to the agent: the credentials and the API calls stay on the controller.
+ * */
+class TransferFileCallable extends MasterToSlaveFileCallable<TransferResult> {
+    @Serial
+    private static final long serialVersionUID = 5470781526359424021L;
+
+    private final URI uploadUri;
+    private final String contentMd5;
+    private final Duration idleTimeout;
+    private final StallPolicy stallPolicy;
+    private final TaskListener listener;
+
+    /**
+     * @param uploadUri The presigned upload url
+     * @param contentMd5 MD5 of the file if it is already known (Jenkins fingerprint), nullable
+     * @param idleTimeout The transfer is aborted if it makes no progress for this time
+     * @param stallPolicy The transfer is restarted if its throughput collapses
+     * @param listener Receives the progress reports, nullable
+     * */
+    TransferFileCallable(URI uploadUri, String contentMd5, Duration idleTimeout, StallPolicy stallPolicy,
+                         TaskListener listener) {
+        this.uploadUri = uploadUri;
+        this.contentMd5 = contentMd5;
+        this.idleTimeout = idleTimeout;
+        this.stallPolicy = stallPolicy;
+        this.listener = listener;
+    }
+
+    @Override
+    public TransferResult invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        if (!file.exists()) {
+            throw new RuntimeException("No such file in the workspace: " + file);
+        }
+
+        // the transfers of all the executors of the node share the upload workers
+        // the progress goes to the build console through the remote listener stream
+        String name = file.isDirectory() ? file.getName() + DirectoryArchive.EXTENSION : file.getName();
+        TransferClient client = new TransferClient(idleTimeout, name, listener != null ? listener.getLogger() : null);
+        client.setStallPolicy(stallPolicy);
+        if (file.isDirectory()) {
+            // the directory is streamed as a tar archive generated on the fly
+            DirectoryArchive archive = new DirectoryArchive(file.toPath());
+            return TransferWorkers.get().transfer(archive.size(),
+                    () -> client.put(uploadUri, archive::open, archive.size()));
+        }
+
+        return TransferWorkers.get().transfer(file.length(), () -> client.put(uploadUri, file.toPath(), contentMd5));
+    }
+}
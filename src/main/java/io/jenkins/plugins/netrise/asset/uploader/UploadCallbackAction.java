@@ -0,0 +1,148 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.util.Secret;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.AssetUploadResponse;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadCallbackRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.verb.POST;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Endpoint called by NetRise (or a relay) when the uploaded file is processed.
+ * The request body is the upload status, the same as returned by the status query,
+ * signed with HMAC-SHA256 using the callback secret from the global configuration:
+ * {@code X-NetRise-Signature: sha256=<hex digest of the body>}.
+ * The waiting build is completed at once instead of polling the status.
+ * */
+@Extension
+public class UploadCallbackAction implements UnprotectedRootAction {
+    private static final Logger log = Logger.getLogger(UploadCallbackAction.class);
+
+    public static final String URL_NAME = "netrise-callback";
+    public static final String SIGNATURE_HEADER = "X-NetRise-Signature";
+    public static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    @POST
+    public HttpResponse doIndex(StaplerRequest2 req) throws IOException {
+        Secret secret = Jenkins.get().getDescriptorByType(AppBuilder.DescriptorImpl.class).getCallbackSecret();
+        if (secret == null || secret.getPlainText().isBlank()) {
+            return HttpResponses.errorWithoutStack(404, "Upload callbacks are disabled");
+        }
+
+        byte[] body;
+        try (InputStream in = req.getInputStream()) {
+            body = in.readNBytes(MAX_BODY_SIZE + 1);
+        }
+        if (body.length > MAX_BODY_SIZE) {
+            return HttpResponses.errorWithoutStack(413, "Request body is too large");
+        }
+        if (!verify(body, req.getHeader(SIGNATURE_HEADER), secret.getPlainText())) {
+            log.warn("Upload callback with invalid signature is rejected");
+            return HttpResponses.errorWithoutStack(403, "Invalid signature");
+        }
+
+        AssetUploadResponse status;
+        try {
+            status = mapper.readValue(body, AssetUploadResponse.class);
+        } catch (IOException e) {
+            return HttpResponses.errorWithoutStack(400, "Invalid upload status");
+        }
+        if (status.uploadId() == null || status.uploadId().isBlank()) {
+            return HttpResponses.errorWithoutStack(400, "Upload ID is not defined");
+        }
+
+        if (Boolean.TRUE.equals(status.uploaded())) {
+            boolean waiting = UploadCallbackRegistry.get().complete(status.uploadId(), status.assetId());
+            log.debug("Upload callback:", status.uploadId(), waiting ? "completed" : "kept for the later wait");
+        }
+        return HttpResponses.status(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    /**
+     * Check the HMAC-SHA256 signature of the body
+     *
+     * @param body Request body
+     * @param signature The signature header value
+     * @param secret The shared secret
+     * */
+    static boolean verify(byte[] body, String signature, String secret) {
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            expected = HexFormat.of().parseHex(signature.substring(SIGNATURE_PREFIX.length()).trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(body, secret), expected);
+    }
+
+    static byte[] sign(byte[] body, String secret) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return mac.doFinal(body);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The callback is authenticated by the signature, so no crumb is needed
+     * */
+    @Extension
+    public static class CallbackCrumbExclusion extends CrumbExclusion {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+                throws IOException, ServletException {
+            String path = req.getPathInfo();
+            if (path != null && (path.equals("/" + URL_NAME) || path.startsWith("/" + URL_NAME + "/"))) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
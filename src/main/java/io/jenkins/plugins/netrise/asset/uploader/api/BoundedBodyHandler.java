@@ -0,0 +1,150 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Response body handler that never keeps more than the configured number of bytes in memory.
+ * Successful JSON and text responses fail if they are larger than {@code maxBodySize}.
+ * Error responses and responses of unknown type are only needed for logs,
+ * so they are cut to {@code maxLoggedBodySize} and the rest of the stream is cancelled.
+ * */
+public class BoundedBodyHandler implements HttpResponse.BodyHandler<String> {
+
+    public static final String TRUNCATED_MARKER = "... [truncated]";
+
+    private final long maxBodySize;
+    private final int maxLoggedBodySize;
+
+    /**
+     * @param maxBodySize Max size of the successful response body in bytes
+     * @param maxLoggedBodySize Max size of the error or unknown response body in bytes
+     * */
+    public BoundedBodyHandler(long maxBodySize, int maxLoggedBodySize) {
+        this.maxBodySize = maxBodySize;
+        this.maxLoggedBodySize = maxLoggedBodySize;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<String> apply(HttpResponse.ResponseInfo responseInfo) {
+        String contentType = responseInfo.headers().firstValue(Client.CONTENT_TYPE_HEADER).orElse(null);
+        Charset charset = charsetOf(contentType);
+        if (responseInfo.statusCode() < 400 && isReadable(contentType)) {
+            return new Subscriber(charset, maxBodySize, false);
+        }
+        return new Subscriber(charset, maxLoggedBodySize, true);
+    }
+
+    static boolean isJson(String contentType) {
+        return contentType != null && contentType.toLowerCase().contains(Client.APP_JSON_CONTENT_TYPE);
+    }
+
+    private static boolean isReadable(String contentType) {
+        return isJson(contentType)
+                || contentType != null && contentType.toLowerCase().contains(Client.APP_TEXT_CONTENT_TYPE);
+    }
+
+    /**
+     * Return the charset from the 'Content-Type' header value or UTF-8 by default
+     * */
+    static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                String[] kv = param.trim().split("=", 2);
+                if (kv.length == 2 && "charset".equalsIgnoreCase(kv[0].trim())) {
+                    try {
+                        return Charset.forName(kv[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * The response body is larger than the limit
+     * */
+    static class TooLargeException extends IOException {
+        TooLargeException(long limit) {
+            super("Response body exceeds " + limit + " bytes.");
+        }
+    }
+
+    /**
+     * Collects the body up to the limit.
+     * Either fails or truncates the body when the limit is exceeded.
+     * */
+    static class Subscriber implements HttpResponse.BodySubscriber<String> {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final Charset charset;
+        private final long limit;
+        private final boolean truncate;
+        private Flow.Subscription subscription;
+
+        Subscriber(Charset charset, long limit, boolean truncate) {
+            this.charset = charset;
+            this.limit = limit;
+            this.truncate = truncate;
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                long free = limit - body.size();
+                if (item.remaining() > free) {
+                    subscription.cancel();
+                    if (truncate) {
+                        append(item, (int) free);
+                        result.complete(body.toString(charset) + TRUNCATED_MARKER);
+                    } else {
+                        result.completeExceptionally(new TooLargeException(limit));
+                    }
+                    return;
+                }
+                append(item, item.remaining());
+            }
+            subscription.request(1);
+        }
+
+        private void append(ByteBuffer item, int length) {
+            byte[] bytes = new byte[length];
+            item.get(bytes);
+            body.write(bytes, 0, length);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(body.toString(charset));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Direct buffers of the transfers of the JVM within one memory budget, so the memory of a node doesn't grow
+ * with the number of the uploads: when the budget is used up, the transfers wait for a buffer.
+ * A buffer given back with {@link #release} is reused. A buffer that may still be referenced (e.g. by a failed request)
+ * is given up with {@link #discard}: it is not reused and counts against the budget until it is collected.
+ * */
+public class BufferPool {
+
+    /**
+     * Buffer size in bytes (1 MB by default)
+     * */
+    public static final int BUFFER_SIZE = Integer.getInteger(BufferPool.class.getName() + ".bufferSize", 1024 * 1024);
+
+    /**
+     * Max size of all the buffers in bytes (64 MB by default)
+     * */
+    public static final long BUDGET = Long.getLong(BufferPool.class.getName() + ".budget", 64L * 1024 * 1024);
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private static volatile BufferPool instance;
+
+    private final int bufferSize;
+    private final int capacity;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private int allocated;
+
+    /**
+     * @param bufferSize Buffer size in bytes
+     * @param budget Max size of all the buffers in bytes, one buffer at least
+     * */
+    public BufferPool(int bufferSize, long budget) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / bufferSize));
+    }
+
+    /**
+     * Return the buffers of this JVM
+     * */
+    public static BufferPool get() {
+        if (instance == null) {
+            synchronized (BufferPool.class) {
+                if (instance == null) {
+                    instance = new BufferPool(BUFFER_SIZE, BUDGET);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Return the max number of the buffers
+     * */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of the buffers in use
+     * */
+    public synchronized int getAllocated() {
+        return allocated - free.size();
+    }
+
+    /**
+     * Take a cleared buffer, wait while the budget is used up
+     * */
+    public ByteBuffer acquire() throws InterruptedException {
+        synchronized (this) {
+            while (free.isEmpty() && allocated >= capacity) {
+                wait();
+            }
+            ByteBuffer buffer = free.pollFirst();
+            if (buffer != null) {
+                return buffer.clear();
+            }
+            allocated++;
+        }
+        try {
+            return ByteBuffer.allocateDirect(bufferSize);
+        } catch (OutOfMemoryError e) {
+            synchronized (this) {
+                allocated--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Give the buffer back to be reused. It should not be referenced anywhere else.
+     * */
+    public synchronized void release(ByteBuffer buffer) {
+        check(buffer);
+        free.addFirst(buffer);
+        notifyAll();
+    }
+
+    /**
+     * Give up the buffer that may still be referenced (e.g. by the HTTP client): it is not reused
+     * and counts against the budget until its memory is freed.
+     * */
+    public void discard(ByteBuffer buffer) {
+        check(buffer);
+        // the slices and duplicates refer to the buffer, so it is collected when nothing uses its memory
+        cleaner.register(buffer, this::freed);
+    }
+
+    private synchronized void freed() {
+        allocated--;
+        notifyAll();
+    }
+
+    private void check(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            throw new IllegalArgumentException("The buffer is not from the pool");
+        }
+    }
+}
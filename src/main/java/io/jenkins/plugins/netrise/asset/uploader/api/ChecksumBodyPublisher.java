@@ -0,0 +1,121 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+/**
+ * Body publisher that computes the digests of the request body while it is being sent,
+ * so the file is read only once whatever the number of algorithms.
+ * The digests are reset when the body is subscribed again (e.g. on redirect).
+ * */
+public class ChecksumBodyPublisher implements HttpRequest.BodyPublisher {
+
+    public static final String SHA_256 = "SHA-256";
+    public static final String MD5 = "MD5";
+
+    private final HttpRequest.BodyPublisher delegate;
+    private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+    private volatile long size;
+
+    public ChecksumBodyPublisher(HttpRequest.BodyPublisher delegate) {
+        this(delegate, SHA_256);
+    }
+
+    /**
+     * @param delegate The body to send
+     * @param algorithms Digest algorithms, the first one is returned by {@link #getDigest()}
+     * */
+    public ChecksumBodyPublisher(HttpRequest.BodyPublisher delegate, String... algorithms) {
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("At least one digest algorithm is required");
+        }
+        this.delegate = delegate;
+        for (String algorithm : algorithms) {
+            try {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+            }
+        }
+    }
+
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        synchronized (digests) {
+            digests.values().forEach(MessageDigest::reset);
+            size = 0;
+        }
+        delegate.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                synchronized (digests) {
+                    size += item.remaining();
+                    for (MessageDigest digest : digests.values()) {
+                        digest.update(item.duplicate());
+                    }
+                }
+                subscriber.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Return the number of bytes sent
+     * */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return hex digest of the sent bytes computed with the first algorithm.
+     * Should be called after the request is completed.
+     * */
+    public String getDigest() {
+        return getDigest(digests.keySet().iterator().next());
+    }
+
+    /**
+     * Return hex digest of the sent bytes. Should be called after the request is completed.
+     *
+     * @param algorithm One of the algorithms the publisher is created with
+     * */
+    public String getDigest(String algorithm) {
+        synchronized (digests) {
+            MessageDigest digest = digests.get(algorithm);
+            if (digest == null) {
+                throw new IllegalArgumentException("Digest is not computed: " + algorithm);
+            }
+            try {
+                return HexFormat.of().formatHex(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
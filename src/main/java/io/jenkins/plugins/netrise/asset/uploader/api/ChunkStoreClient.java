@@ -0,0 +1,166 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.ChunkManifest;
+import io.jenkins.plugins.netrise.asset.uploader.model.ChunkManifestResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * Client of the chunk store used by the delta upload:
+ * <ul>
+ *     <li>{@code PUT chunks/<sha256>} stores the chunk, repeated puts of the same chunk are accepted;</li>
+ *     <li>{@code PUT manifests/<sha256>} stores the file manifest, {@code 409} with the missing chunk hashes
+ *     if some chunks are not in the store;</li>
+ *     <li>{@code GET files/<sha256>} returns the file assembled from the manifest, it is submitted to NetRise by reference.</li>
+ * </ul>
+ * Like {@link TransferClient}, it doesn't need the API credentials and runs on the node where the file is located.
+ * */
+public class ChunkStoreClient {
+    private static final Logger log = Logger.getLogger(ChunkStoreClient.class);
+
+    // the list of the missing chunks of a large file doesn't fit the usual limit of the logged body
+    private static final int MAX_RESPONSE_SIZE = 4 * 1024 * 1024;
+
+    private static final HttpClient sharedHttpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Timeouts.DEFAULT.connect())
+            .build();
+
+    private final URI store;
+
+    /**
+     * @param store The chunk store url
+     * */
+    public ChunkStoreClient(URI store) {
+        String value = store.toString();
+        this.store = URI.create(value.endsWith("/") ? value : value + "/");
+    }
+
+    protected HttpClient getHttpClient() {
+        return sharedHttpClient;
+    }
+
+    /**
+     * Return the url of the file assembled by the store from the manifest
+     * */
+    public URI getFileUri(String sha256) {
+        return store.resolve("files/" + sha256);
+    }
+
+    /**
+     * Store the chunk
+     * Can throw {@link ClientException} if there is some network error or the chunk is not accepted
+     *
+     * @param sha256 SHA-256 of the chunk
+     * @param data The buffer
+     * @param offset Chunk offset in the buffer
+     * @param length Chunk length
+     * */
+    public void putChunk(String sha256, byte[] data, int offset, int length) {
+        // the chunks are small, so the request timeout is enough to detect a stalled upload
+        HttpRequest request = HttpRequest.newBuilder(store.resolve("chunks/" + sha256))
+                .timeout(Timeouts.DEFAULT.uploadIdle())
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(data, offset, length))
+                .build();
+        HttpResponse<String> response = send(request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            log.error("Chunk upload error", response.statusCode(), response.body());
+            throw new ClientException("Chunk is not accepted by the store: " + response.statusCode());
+        }
+    }
+
+    /**
+     * Store the chunk from the direct buffer without copying it into the heap
+     * Can throw {@link ClientException} if there is some network error or the chunk is not accepted
+     *
+     * @param sha256 SHA-256 of the chunk
+     * @param chunk The chunk between the buffer position and limit
+     * */
+    public void putChunk(String sha256, ByteBuffer chunk) {
+        HttpRequest request = HttpRequest.newBuilder(store.resolve("chunks/" + sha256))
+                .timeout(Timeouts.DEFAULT.uploadIdle())
+                .PUT(HttpRequest.BodyPublishers.fromPublisher(subscriber -> subscriber.onSubscribe(
+                        new Flow.Subscription() {
+                            private boolean done;
+
+                            @Override
+                            public synchronized void request(long n) {
+                                if (!done && n > 0) {
+                                    done = true;
+                                    subscriber.onNext(chunk.duplicate());
+                                    subscriber.onComplete();
+                                }
+                            }
+
+                            @Override
+                            public synchronized void cancel() {
+                                done = true;
+                            }
+                        }), chunk.remaining()))
+                .build();
+        HttpResponse<String> response = send(request);
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            log.error("Chunk upload error", response.statusCode(), response.body());
+            throw new ClientException("Chunk is not accepted by the store: " + response.statusCode());
+        }
+    }
+
+    /**
+     * Store the file manifest
+     * Can throw {@link ClientException} if there is some network error or the manifest is not accepted
+     *
+     * @param manifest The manifest
+     *
+     * @return Hashes of the chunks missing in the store, empty if the manifest is accepted
+     * */
+    public List<String> putManifest(ChunkManifest manifest) {
+        String body;
+        try {
+            body = Client.MAPPER.writeValueAsString(manifest);
+        } catch (JsonProcessingException e) {
+            throw new ClientException("Couldn't serialize the manifest", e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(store.resolve("manifests/" + manifest.sha256()))
+                .timeout(Timeouts.DEFAULT.graphql())
+                .header(Client.CONTENT_TYPE_HEADER, Client.APP_JSON_CONTENT_TYPE)
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = send(request);
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+            return List.of();
+        }
+        if (response.statusCode() == 409) {
+            try {
+                ChunkManifestResponse missing = Client.MAPPER.readValue(response.body(), ChunkManifestResponse.class);
+                if (missing.missing() != null && !missing.missing().isEmpty()) {
+                    return missing.missing();
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Invalid manifest response", e.getMessage());
+            }
+        }
+        log.error("Manifest upload error", response.statusCode(), response.body());
+        throw new ClientException("Manifest is not accepted by the store: " + response.statusCode());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) {
+        try {
+            return getHttpClient().send(request,
+                    new BoundedBodyHandler(MAX_RESPONSE_SIZE, MAX_RESPONSE_SIZE));
+        } catch (IOException e) {
+            throw new ClientException("Request sending error.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Request sending is interrupted.", e);
+        }
+    }
+}
@@ -5,17 +5,32 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.PersistedQuery;
+import io.jenkins.plugins.netrise.asset.uploader.model.Query;
+import io.jenkins.plugins.netrise.asset.uploader.model.QueryResponse;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Authorise and make requests to the NetRise API
@@ -33,14 +48,49 @@ public class Client {
 
     public static final String GRANT_TYPE = "client_credentials";
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    /**
+     * Max size of the successful response body in bytes (16 MB by default)
+     * */
+    public static final long MAX_RESPONSE_SIZE = Long.getLong(Client.class.getName() + ".maxResponseSize", 16L * 1024 * 1024);
+
+    /**
+     * Max size of the error response body kept for the logs in bytes (8 KB by default)
+     * */
+    public static final int MAX_LOGGED_BODY_SIZE = Integer.getInteger(Client.class.getName() + ".maxLoggedBodySize", 8 * 1024);
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * The hedged request is not sent sooner than that, so a fast endpoint doesn't get every request twice
+     * */
+    public static final long MIN_HEDGE_DELAY = 50;
+
+    /**
+     * Send the GraphQL queries by their hashes to the endpoints supporting it (enabled by default)
+     * */
+    public static final boolean PERSISTED_QUERIES = Boolean.parseBoolean(
+            System.getProperty(Client.class.getName() + ".persistedQueries", "true"));
+
+    private volatile HttpClient httpClient = newHttpClient(Timeouts.DEFAULT);
+
+    private volatile Timeouts timeouts = Timeouts.DEFAULT;
 
     private final TokenRequest tokenRequest;
 
-    private TokenInstance tokenInstance;
+    private volatile TokenInstance tokenInstance;
 
     private final URI tokenUri;
 
+    private long maxResponseSize = MAX_RESPONSE_SIZE;
+
+    private int maxLoggedBodySize = MAX_LOGGED_BODY_SIZE;
+
+    private boolean persistedQueries = PERSISTED_QUERIES;
+
+    // the endpoints known to support the persisted queries (true) or not (false)
+    private final Map<URI, Boolean> persistedQuerySupport = new ConcurrentHashMap<>();
+
     /**
      * Configure the API Client
      *
@@ -61,6 +111,24 @@ public class Client {
         );
     }
 
+    private static HttpClient newHttpClient(Timeouts timeouts) {
+        return HttpClient.newBuilder()
+                .connectTimeout(timeouts.connect())
+                .build();
+    }
+
+    /**
+     * Set the timeouts of the request phases, the connections are reopened with the new connect timeout
+     * */
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+        this.httpClient = newHttpClient(timeouts);
+    }
+
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
     protected HttpRequest.Builder getRequestBuilder(URI uri) {
         return HttpRequest.newBuilder()
                 .uri(uri);
@@ -99,6 +167,7 @@ public class Client {
      * */
     public Response get(URI uri) {
         HttpRequest request = getAuthenticatedRequestBuilder(uri)
+                .timeout(timeouts.graphql())
                 .GET()
                 .build();
 
@@ -117,12 +186,232 @@ public class Client {
      * */
     public Response post(URI uri, Object data) {
         HttpRequest request = getAuthenticatedRequestBuilder(uri, Map.of(CONTENT_TYPE_HEADER, APP_JSON_CONTENT_TYPE))
+                .timeout(timeouts.graphql())
                 .POST(HttpRequest.BodyPublishers.ofString(toJson(data)))
                 .build();
 
         return send(request);
     }
 
+    /**
+     * POST request with the JSON response decoded straight from the response stream
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param uri The url
+     * @param data Payload
+     * @param typeReference The type of the response object
+     *
+     * @throws ClientException if there is an error
+     * @return Response object
+     * */
+    public <T> T post(URI uri, Object data, TypeReference<T> typeReference) {
+        return post(uri, data, typeReference, timeouts.graphql());
+    }
+
+    /**
+     * POST request with the JSON response decoded straight from the response stream
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param uri The url
+     * @param data Payload
+     * @param typeReference The type of the response object
+     * @param timeout Request timeout, e.g. shortened by the upload deadline
+     *
+     * @throws ClientException if there is an error
+     * @return Response object
+     * */
+    public <T> T post(URI uri, Object data, TypeReference<T> typeReference, Duration timeout) {
+        HttpRequest request = getAuthenticatedRequestBuilder(uri, Map.of(CONTENT_TYPE_HEADER, APP_JSON_CONTENT_TYPE))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(data)))
+                .build();
+
+        return send(request, typeReference);
+    }
+
+    /**
+     * POST request of an idempotent query. If there is no response within the 95th percentile of the latencies
+     * of the same requests, one more request is sent and the first response is used, so a slow connection
+     * or a slow server node doesn't delay the result.
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param uri The url
+     * @param data Payload
+     * @param typeReference The type of the response object
+     * @param timeout Request timeout
+     * @param latencies Latencies of the same requests, the latency of this one is added
+     *
+     * @throws ClientException if there is an error
+     * @return Response object
+     * */
+    public <T> T postHedged(URI uri, Object data, TypeReference<T> typeReference, Duration timeout,
+                            LatencyTracker latencies) {
+        HttpRequest request = getAuthenticatedRequestBuilder(uri, Map.of(CONTENT_TYPE_HEADER, APP_JSON_CONTENT_TYPE))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(data)))
+                .build();
+
+        log.debug("Send ", request.method(), " request to ", request.uri());
+
+        long start = System.currentTimeMillis();
+        long p95 = latencies.getPercentile(95);
+        CompletableFuture<HttpResponse<String>> first = sendAsync(request);
+        CompletableFuture<HttpResponse<String>> second = null;
+        HttpResponse<String> httpResponse;
+        try {
+            if (p95 < 0) {
+                httpResponse = first.get();
+            } else {
+                try {
+                    httpResponse = first.get(Math.max(p95, MIN_HEDGE_DELAY), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    log.debug("No response in", p95, "ms, send a hedged request to", request.uri());
+                    second = sendAsync(request);
+                    httpResponse = firstSuccessful(first, second).get();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? toException(io)
+                    : new ClientException("Request sending error.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Request sending is interrupted.", e);
+        } finally {
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+        latencies.add(System.currentTimeMillis() - start);
+
+        Response response = new Response(httpResponse);
+        if (response.getStatusCode() >= 400 || !(response.isJson() || response.isText())) {
+            throw toException(response);
+        }
+
+        log.debug("Request to ", request.uri(), " completed.");
+
+        return response.asJson(typeReference);
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        return getHttpClient().sendAsync(request, new BoundedBodyHandler(maxResponseSize, maxLoggedBodySize));
+    }
+
+    /**
+     * Return the first successful response, or the last error if both requests fail
+     * */
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> future : List.of(first, second)) {
+            future.whenComplete((r, e) -> {
+                if (e == null) {
+                    result.complete(r);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * POST the GraphQL query by its hash if the endpoint supports the persisted queries, see {@link PersistedQuery}
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param uri The url
+     * @param query The query
+     * @param typeReference The type of the response object
+     * @param timeout Request timeout
+     *
+     * @throws ClientException if there is an error
+     * @return Response object
+     * */
+    public <T> QueryResponse<T> postQuery(URI uri, Query<?> query, TypeReference<QueryResponse<T>> typeReference,
+                                          Duration timeout) {
+        return persisted(uri, query, data -> post(uri, data, typeReference, timeout));
+    }
+
+    /**
+     * POST the idempotent GraphQL query by its hash, the hedged request is sent as in {@link #postHedged}
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param uri The url
+     * @param query The query
+     * @param typeReference The type of the response object
+     * @param timeout Request timeout
+     * @param latencies Latencies of the same requests, the latency of this one is added
+     *
+     * @throws ClientException if there is an error
+     * @return Response object
+     * */
+    public <T> QueryResponse<T> postQueryHedged(URI uri, Query<?> query, TypeReference<QueryResponse<T>> typeReference,
+                                                Duration timeout, LatencyTracker latencies) {
+        return persisted(uri, query, data -> postHedged(uri, data, typeReference, timeout, latencies));
+    }
+
+    /**
+     * Send the query hash first. The query text is sent when the endpoint doesn't know the hash yet,
+     * or once more without the hash when the endpoint replies that it doesn't support the persisted queries.
+     * Any other reply is returned as is: the request may have been executed (e.g. a failed mutation).
+     * */
+    private <T> QueryResponse<T> persisted(URI uri, Query<?> query, Function<Object, QueryResponse<T>> send) {
+        Boolean supported = persistedQuerySupport.get(uri);
+        if (!persistedQueries || Boolean.FALSE.equals(supported)) {
+            return send.apply(query);
+        }
+
+        QueryResponse<T> response;
+        try {
+            response = send.apply(PersistedQuery.hashOf(query));
+        } catch (ClientException e) {
+            // e.g. the endpoint rejects the extension with an error status
+            if (isNotSupported(e)) {
+                return notSupported(uri, query, send);
+            }
+            throw e;
+        }
+
+        if (PersistedQuery.isNotFound(response)) {
+            log.debug("Register the persisted query at", uri);
+            persistedQuerySupport.put(uri, true);
+            return send.apply(PersistedQuery.of(query));
+        }
+        if (PersistedQuery.isNotSupported(response)) {
+            return notSupported(uri, query, send);
+        }
+        if (response.data() != null) {
+            persistedQuerySupport.put(uri, true);
+        }
+        return response;
+    }
+
+    private static boolean isNotSupported(ClientException e) {
+        return Stream.of(e.getMessage(), e.getDescription())
+                .anyMatch(m -> m != null && m.contains(PersistedQuery.NOT_SUPPORTED));
+    }
+
+    private <T> QueryResponse<T> notSupported(URI uri, Query<?> query, Function<Object, QueryResponse<T>> send) {
+        log.debug("Persisted queries are not supported at", uri);
+        persistedQuerySupport.put(uri, false);
+        return send.apply(query);
+    }
+
+    /**
+     * Send the GraphQL queries by their hashes, enabled by default
+     * */
+    public void setPersistedQueries(boolean persistedQueries) {
+        this.persistedQueries = persistedQueries;
+    }
+
+    /**
+     * Return true or false if the endpoint is known to support the persisted queries or not, null if it is unknown
+     * */
+    public Boolean isPersistedQuerySupported(URI uri) {
+        return persistedQuerySupport.get(uri);
+    }
+
     /**
      * PUT request to upload the file
      * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
@@ -136,7 +425,7 @@ public class Client {
         HttpRequest request;
         try {
             request = getAuthenticatedRequestBuilder(uri)
-                    .PUT(HttpRequest.BodyPublishers.ofFile(path))
+                    .PUT(FileBodyPublisher.ofFile(path))
                     .build();
         } catch (FileNotFoundException e) {
             log.error(e.getLocalizedMessage(), e);
@@ -161,24 +450,14 @@ public class Client {
 
         try {
             response = new Response(
-                    getHttpClient().send(request, HttpResponse.BodyHandlers.ofString())
+                    getHttpClient().send(request, new BoundedBodyHandler(maxResponseSize, maxLoggedBodySize))
             );
-            if (response.getStatusCode() >= 400) {
-                if (response.isJson()) {
-                    Error error = response.asJson(Error.class);
-                    log.error("Error", response.getStatusCode(), error.error(), error.description());
-                    throw new ClientException(error.error(), error.description());
-                } else if (response.isText()) {
-                    log.error("Error", response.getStatusCode(), response.getBody());
-                    throw new ClientException(response.getBody());
-                } else {
-                    log.error("Unknown Error", response.getStatusCode(), response.getBody());
-                    throw new ClientException("Unknown error.");
-                }
-            } else if (!(response.isJson() || response.isText())) {
-                throw new ClientException("Invalid content type.", response.getHeader(CONTENT_TYPE_HEADER));
+            if (response.getStatusCode() >= 400 || !(response.isJson() || response.isText())) {
+                throw toException(response);
             }
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
+            throw toException(e);
+        } catch (InterruptedException e) {
             throw new ClientException("Request sending error.", e);
         }
 
@@ -187,6 +466,83 @@ public class Client {
         return response;
     }
 
+    /**
+     * Send configured request and decode the JSON response from the response stream
+     * Can throw {@link ClientException} if there is some network error or IOException or {@link AuthException} if there is an authentication error
+     *
+     * @param request Configured request
+     * @param typeReference The type of the response object
+     *
+     * @return Response object
+     * */
+    protected <T> T send(HttpRequest request, TypeReference<T> typeReference) {
+        T result;
+
+        log.debug("Send ", request.method(), " request to ", request.uri());
+
+        try {
+            result = getHttpClient()
+                    .send(request, new JsonBodyHandler<>(typeReference, maxResponseSize, maxLoggedBodySize))
+                    .body()
+                    .get();
+        } catch (IOException e) {
+            throw toException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClientException("Request sending is interrupted.", e);
+        }
+
+        log.debug("Request to ", request.uri(), " completed.");
+
+        return result;
+    }
+
+    /**
+     * Convert the sending error into the exception, the response body over the limit has its own message
+     * */
+    static ClientException toException(IOException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BoundedBodyHandler.TooLargeException) {
+                return new ClientException("Response body is too large.", cause.getLocalizedMessage());
+            }
+        }
+        return new ClientException("Request sending error.", e);
+    }
+
+    /**
+     * Convert an error response (or the response of unsupported content type) into the exception
+     * */
+    static ClientException toException(Response response) {
+        if (response.getStatusCode() >= 400) {
+            if (response.isJson()) {
+                Error error = response.asJson(Error.class);
+                log.error("Error", response.getStatusCode(), error.error(), error.description());
+                return new ClientException(error.error(), error.description());
+            } else if (response.isText()) {
+                log.error("Error", response.getStatusCode(), response.getBody());
+                return new ClientException(response.getBody());
+            } else {
+                log.error("Unknown Error", response.getStatusCode(), response.getBody());
+                return new ClientException("Unknown error.");
+            }
+        }
+        return new ClientException("Invalid content type.", response.getHeader(CONTENT_TYPE_HEADER));
+    }
+
+    /**
+     * Set max size of the successful response body in bytes
+     * */
+    public void setMaxResponseSize(long maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Set max size of the error response body kept for the logs in bytes
+     * */
+    public void setMaxLoggedBodySize(int maxLoggedBodySize) {
+        this.maxLoggedBodySize = maxLoggedBodySize;
+    }
+
     protected HttpClient getHttpClient() {
         return httpClient;
     }
@@ -197,21 +553,61 @@ public class Client {
      * @return Wrapper with token and if it is valid
      * */
     public TokenInstance authenticate() {
-        return authenticate(tokenRequest);
+        return authenticate(tokenRequest, 0);
+    }
+
+    /**
+     * Make an authentication call to the API if the token expires sooner than the provided time
+     *
+     * @param minValidity Time in milliseconds the token should stay valid
+     *
+     * @return Wrapper with token and if it is valid
+     * */
+    public TokenInstance authenticate(long minValidity) {
+        return authenticate(tokenRequest, minValidity);
+    }
+
+    /**
+     * Prepare the next requests: resolve the hosts, get the token and open the pooled connections
+     * to the token url and the endpoint. Called periodically, it also keeps the connections and the token alive.
+     * Can throw {@link ClientException} if there is some network error or {@link AuthException} if there is an authentication error
+     *
+     * @param endpoint The endpoint the requests are sent to
+     * @param ping The cheap query sent to the endpoint
+     * @param minTokenValidity Time in milliseconds the token should stay valid, a new one is requested otherwise
+     * */
+    public void warmUp(URI endpoint, Object ping, long minTokenValidity) {
+        resolve(tokenUri);
+        resolve(endpoint);
+        authenticate(minTokenValidity);
+        post(endpoint, ping);
+    }
+
+    private static void resolve(URI uri) {
+        if (uri.getHost() == null) {
+            return;
+        }
+        try {
+            InetAddress.getAllByName(uri.getHost());
+        } catch (UnknownHostException e) {
+            log.warn("Couldn't resolve the host", uri.getHost(), e.getMessage());
+        }
     }
 
-    private TokenInstance authenticate(TokenRequest request) {
+    // the client is shared by concurrent builds so only one of them requests a new token
+    private synchronized TokenInstance authenticate(TokenRequest request, long minValidity) {
         if (request == null) {
             throw new IllegalArgumentException("'request' should be defined.");
         }
 
-        if (tokenInstance != null && tokenInstance.isValid()) {
+        if (tokenInstance != null && tokenInstance.isValidFor(minValidity)) {
             return tokenInstance;
         }
 
         log.debug("Authentication started");
 
         HttpRequest req = getRequestBuilder(tokenUri)
+                .timeout(timeouts.auth())
                 .header(CONTENT_TYPE_HEADER, APP_JSON_CONTENT_TYPE)
                 .POST(HttpRequest.BodyPublishers.ofString(toJson(request)))
                 .build();
@@ -234,9 +630,8 @@ public class Client {
     }
 
     private <T> String toJson(T data) {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.writeValueAsString(data);
+            return MAPPER.writeValueAsString(data);
         } catch (JsonProcessingException e) {
             throw new ClientException("JSON stringify error.", e.getLocalizedMessage());
         }
@@ -248,14 +643,21 @@ public class Client {
     public static class Response {
         enum ContentType {JSON, TEXT, UNKNOWN}
 
-        private final Map<String, List<String>> headers = new HashMap<>();
+        private static final int MAX_PRINTED_BODY_SIZE = 1024;
+
+        private final Map<String, List<String>> headers;
         private final int statusCode;
         private final String body;
         private ContentType contentType;
 
         public Response(HttpResponse<String> response) {
-            response.headers().map().forEach((k, v) -> {
-                headers.put(k, v);
+            this(response.statusCode(), response.headers(), response.body());
+        }
+
+        public Response(int statusCode, HttpHeaders headers, String body) {
+            // the header map of HttpHeaders is immutable so it is shared instead of copying
+            this.headers = headers != null ? headers.map() : Map.of();
+            this.headers.forEach((k, v) -> {
                 if (CONTENT_TYPE_HEADER.equalsIgnoreCase(k) && v != null && !v.isEmpty()) {
                     setContentType(v.get(0));
                 }
@@ -263,8 +665,8 @@ public class Client {
             if (contentType == null) {
                 contentType = ContentType.UNKNOWN;
             }
-            this.statusCode = response.statusCode();
-            this.body = response.body();
+            this.statusCode = statusCode;
+            this.body = body;
         }
 
         private void setContentType(String contentType) {
@@ -338,11 +740,8 @@ public class Client {
                 return null;
             }
 
-            ObjectMapper mapper = new ObjectMapper()
-                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
             try {
-                return mapper.readValue(body, clz);
+                return MAPPER.readValue(body, clz);
             } catch (JsonProcessingException e) {
                 throw new ClientException("JSON parse error.", e.getLocalizedMessage());
             }
@@ -356,11 +755,8 @@ public class Client {
                 return null;
             }
 
-            ObjectMapper mapper = new ObjectMapper()
-                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
             try {
-                return mapper.readValue(body, typeReference);
+                return MAPPER.readValue(body, typeReference);
             } catch (JsonProcessingException e) {
                 throw new ClientException("JSON parse error.", e.getLocalizedMessage());
             }
@@ -369,7 +765,9 @@ public class Client {
         @Override
         public String toString() {
             return statusCode +
-                    ":\n" + body;
+                    ":\n" + (body != null && body.length() > MAX_PRINTED_BODY_SIZE
+                            ? body.substring(0, MAX_PRINTED_BODY_SIZE) + BoundedBodyHandler.TRUNCATED_MARKER
+                            : body);
         }
     }
 
@@ -394,8 +792,17 @@ public class Client {
          * Return true if token is defined and not expired
          * */
         public boolean isValid() {
+            return isValidFor(0);
+        }
+
+        /**
+         * Return true if token is defined and doesn't expire within the provided time
+         *
+         * @param millis Time in milliseconds
+         * */
+        public boolean isValidFor(long millis) {
             return response != null && response.accessToken() != null && response.tokenType() != null && response.expiresIn() != null
-                    && (System.currentTimeMillis() - time < response.expiresIn() * timeUnits);
+                    && (System.currentTimeMillis() + millis - time < response.expiresIn() * timeUnits);
         }
 
         /**
@@ -0,0 +1,323 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File body read with NIO in large chunks instead of the small heap buffers of {@link HttpRequest.BodyPublishers#ofFile}.
+ * The chunks are slices of the memory-mapped windows of the file (the socket writes them from the page cache
+ * without a copy into the heap) or read into the direct buffers of the {@link BufferPool} and copied into the heap.
+ * The HTTP client may keep a chunk after it requests the next one, so a pooled buffer is never published:
+ * it is given back as soon as it is copied and the direct memory stays within the pool budget.
+ * The next chunks are read ahead in background while the current one is sent,
+ * and no more chunks are published than the HTTP client requests.
+ * */
+public class FileBodyPublisher implements HttpRequest.BodyPublisher {
+
+    /**
+     * Chunk size in bytes (1 MB by default)
+     * */
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger(FileBodyPublisher.class.getName() + ".chunkSize", 1024 * 1024);
+
+    /**
+     * Number of the chunks read ahead of the one being sent
+     * */
+    public static final int DEFAULT_READ_AHEAD = Integer.getInteger(FileBodyPublisher.class.getName() + ".readAhead", 2);
+
+    /**
+     * Map the chunks instead of reading them into direct buffers, e.g. disabled for network file systems
+     * */
+    public static final boolean MAPPED = Boolean.parseBoolean(
+            System.getProperty(FileBodyPublisher.class.getName() + ".mapped", "true"));
+
+    /**
+     * Size of the mapped windows the chunks are sliced from (64 MB by default), it bounds the number of the mappings
+     * */
+    public static final int DEFAULT_WINDOW_SIZE = Integer.getInteger(FileBodyPublisher.class.getName() + ".windowSize", 64 * 1024 * 1024);
+
+    private static final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "NetRise read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+    private final long size;
+    private final int chunkSize;
+    private final int readAhead;
+    private final boolean mapped;
+    private final long windowSize;
+
+    /**
+     * @param path The file
+     * @param chunkSize Size of the published buffers, the read chunks are not larger than the pool buffers
+     * @param readAhead Number of the chunks read ahead, 1 at least
+     * @param mapped Map the chunks instead of reading them through the pooled direct buffers
+     * */
+    public FileBodyPublisher(Path path, int chunkSize, int readAhead, boolean mapped) throws FileNotFoundException {
+        this(path, chunkSize, readAhead, mapped, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param path The file
+     * @param chunkSize Size of the published buffers, the read chunks are not larger than the pool buffers
+     * @param readAhead Number of the chunks read ahead, 1 at least
+     * @param mapped Map the chunks instead of reading them through the pooled direct buffers
+     * @param windowSize Size of the mapped windows, rounded down to whole chunks (one chunk at least)
+     * */
+    public FileBodyPublisher(Path path, int chunkSize, int readAhead, boolean mapped, int windowSize)
+            throws FileNotFoundException {
+        if (chunkSize <= 0 || readAhead <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size, read-ahead or window size: "
+                    + chunkSize + ", " + readAhead + ", " + windowSize);
+        }
+        try {
+            this.size = Files.size(path);
+        } catch (IOException e) {
+            throw new FileNotFoundException(path + " not found");
+        }
+        this.path = path;
+        this.chunkSize = mapped ? chunkSize : Math.min(chunkSize, BufferPool.get().getBufferSize());
+        this.readAhead = readAhead;
+        this.mapped = mapped;
+        // a chunk never crosses the window boundary
+        this.windowSize = (long) this.chunkSize * Math.max(1, windowSize / this.chunkSize);
+    }
+
+    /**
+     * Return the publisher with the default settings
+     * */
+    public static FileBodyPublisher ofFile(Path path) throws FileNotFoundException {
+        return new FileBodyPublisher(path, DEFAULT_CHUNK_SIZE, DEFAULT_READ_AHEAD, MAPPED);
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        FileSubscription subscription;
+        try {
+            subscription = new FileSubscription(subscriber, FileChannel.open(path, StandardOpenOption.READ));
+        } catch (IOException e) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(e);
+            return;
+        }
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Publish the chunks in the file order. The chunks are read by the background readers;
+     * the subscriber is called from one thread at a time, the requesting one or the reader that completed the chunk.
+     * */
+    class FileSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final FileChannel channel;
+
+        private final Deque<CompletableFuture<ByteBuffer>> chunks = new ArrayDeque<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long readPosition;
+        private long published;
+        private volatile boolean done;
+        private volatile CompletableFuture<Void> reading = CompletableFuture.completedFuture(null);
+        // the last mapped window, the chunks are its slices
+        private long windowPosition = -1;
+        private MappedByteBuffer window;
+
+        FileSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, FileChannel channel) {
+            this.subscriber = subscriber;
+            this.channel = channel;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            close();
+        }
+
+        /**
+         * Publish the ready chunks while there is demand and start reading the next ones
+         * */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (done) {
+                    return;
+                }
+                fill();
+                CompletableFuture<ByteBuffer> next;
+                while (demand.get() > 0 && (next = pollReady()) != null) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = next.join();
+                    } catch (RuntimeException e) {
+                        fail(e.getCause() != null ? e.getCause() : e);
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    published += chunk.remaining();
+                    // the next chunk is read while this one is sent
+                    fill();
+                    subscriber.onNext(chunk);
+                    if (done) {
+                        return;
+                    }
+                }
+                if (published == size) {
+                    done = true;
+                    close();
+                    subscriber.onComplete();
+                    return;
+                }
+                CompletableFuture<ByteBuffer> pending;
+                synchronized (chunks) {
+                    pending = chunks.peekFirst();
+                }
+                if (pending != null && !pending.isDone()) {
+                    pending.whenComplete((r, e) -> drain());
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        /**
+         * Keep the read-ahead chunks in progress
+         * */
+        private void fill() {
+            synchronized (chunks) {
+                while (!done && chunks.size() < readAhead && readPosition < size) {
+                    long position = readPosition;
+                    int length = (int) Math.min(chunkSize, size - position);
+                    readPosition += length;
+                    chunks.addLast(CompletableFuture.supplyAsync(() -> read(position, length), readers));
+                    reading = CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]));
+                }
+            }
+        }
+
+        /**
+         * Take the next chunk if it is read
+         * */
+        private CompletableFuture<ByteBuffer> pollReady() {
+            synchronized (chunks) {
+                CompletableFuture<ByteBuffer> first = chunks.peekFirst();
+                return first != null && first.isDone() ? chunks.pollFirst() : null;
+            }
+        }
+
+        /**
+         * Return the future of the chunks being read ahead
+         * */
+        CompletableFuture<Void> reading() {
+            return reading;
+        }
+
+        private ByteBuffer read(long position, int length) {
+            try {
+                if (mapped) {
+                    long start = position - position % windowSize;
+                    MappedByteBuffer buffer = window(start).slice((int) (position - start), length);
+                    // the access to the pages beyond the end of the truncated file crashes the JVM
+                    checkSize(position + length);
+                    // the pages are read from the disk now rather than when the socket writes them
+                    return buffer.load();
+                }
+                ByteBuffer buffer = BufferPool.get().acquire().limit(length);
+                try {
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("The file is truncated while it is sent: " + path);
+                        }
+                    }
+                    // the copy belongs to the exchange, the pooled buffer is reused right away
+                    return ByteBuffer.allocate(length).put(buffer.flip()).flip();
+                } finally {
+                    BufferPool.get().release(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Waiting for a buffer is interrupted"));
+            }
+        }
+
+        /**
+         * Return the mapped window starting at the position, the window is mapped once for all its chunks
+         * */
+        private synchronized MappedByteBuffer window(long start) throws IOException {
+            if (windowPosition != start) {
+                long length = Math.min(windowSize, size - start);
+                checkSize(start + length);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                windowPosition = start;
+            }
+            return window;
+        }
+
+        private void checkSize(long end) throws IOException {
+            if (channel.size() < end) {
+                throw new IOException("The file is truncated while it is sent: " + path);
+            }
+        }
+
+        private void fail(Throwable error) {
+            if (!done) {
+                done = true;
+                close();
+                subscriber.onError(error instanceof UncheckedIOException io ? io.getCause() : error);
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            synchronized (chunks) {
+                chunks.clear();
+            }
+        }
+    }
+}
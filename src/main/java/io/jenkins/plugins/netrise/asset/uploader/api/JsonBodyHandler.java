@@ -0,0 +1,111 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.util.function.Supplier;
+
+/**
+ * Response body handler that decodes a successful JSON response straight from the network stream,
+ * so the body is never kept in memory as a whole. The stream is limited by {@code maxBodySize}.
+ * Any other response is read by {@link BoundedBodyHandler} and turned into {@link ClientException}.
+ * <p>
+ * The decoding happens when the supplier is called (on the calling thread, not on the HTTP client executor).
+ * */
+public class JsonBodyHandler<T> implements HttpResponse.BodyHandler<Supplier<T>> {
+
+    private final TypeReference<T> typeReference;
+    private final long maxBodySize;
+    private final BoundedBodyHandler fallback;
+
+    /**
+     * @param typeReference The type of the response object
+     * @param maxBodySize Max size of the response body in bytes
+     * @param maxLoggedBodySize Max size of the error response body in bytes
+     * */
+    public JsonBodyHandler(TypeReference<T> typeReference, long maxBodySize, int maxLoggedBodySize) {
+        this.typeReference = typeReference;
+        this.maxBodySize = maxBodySize;
+        this.fallback = new BoundedBodyHandler(maxBodySize, maxLoggedBodySize);
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<Supplier<T>> apply(HttpResponse.ResponseInfo responseInfo) {
+        String contentType = responseInfo.headers().firstValue(Client.CONTENT_TYPE_HEADER).orElse(null);
+        if (responseInfo.statusCode() < 400 && BoundedBodyHandler.isJson(contentType)) {
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                    in -> () -> decode(in));
+        }
+
+        return HttpResponse.BodySubscribers.mapping(fallback.apply(responseInfo), body -> () -> {
+            Client.Response response = new Client.Response(responseInfo.statusCode(), responseInfo.headers(), body);
+            if (response.getStatusCode() < 400 && response.isText()) {
+                return response.asJson(typeReference);
+            }
+            throw Client.toException(response);
+        });
+    }
+
+    private T decode(InputStream in) {
+        try (InputStream limited = new LimitedInputStream(in, maxBodySize)) {
+            T value = Client.MAPPER.readerFor(typeReference)
+                    .without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                    .readValue(limited);
+            // read the rest (whitespaces) so the connection can be reused
+            limited.transferTo(OutputStream.nullOutputStream());
+            return value;
+        } catch (BoundedBodyHandler.TooLargeException e) {
+            throw new ClientException("Response body is too large.", e.getLocalizedMessage());
+        } catch (IOException e) {
+            throw new ClientException("JSON parse error.", e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Input stream that fails when more than {@code limit} bytes are read
+     * */
+    static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        private void count(long n) throws IOException {
+            if (n > 0) {
+                count += n;
+                if (count > limit) {
+                    throw new BoundedBodyHandler.TooLargeException(limit);
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            count(b >= 0 ? 1 : 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last requests of one kind, used to decide when a hedged request is sent
+ * */
+public class LatencyTracker {
+
+    public static final int DEFAULT_SIZE = 100;
+    public static final int MIN_SAMPLES = 20;
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    public LatencyTracker() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size Number of the last latencies kept
+     * */
+    public LatencyTracker(int size) {
+        this.samples = new long[size];
+    }
+
+    /**
+     * Add the request latency in milliseconds
+     * */
+    public synchronized void add(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Return the latency percentile in milliseconds, or -1 if there are less than {@link #MIN_SAMPLES} samples
+     *
+     * @param percentile The percentile, e.g. 95
+     * */
+    public synchronized long getPercentile(int percentile) {
+        if (count < Math.min(MIN_SAMPLES, samples.length)) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+}
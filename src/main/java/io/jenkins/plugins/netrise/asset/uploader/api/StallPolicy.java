@@ -0,0 +1,32 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * When the upload is considered stalled: the connection is open and some bytes still go through,
+ * but the throughput stays below the floor for the whole window. Such upload is cancelled and sent again
+ * on a new connection, up to the max number of restarts.
+ *
+ * @param minBytesPerSecond Throughput floor in bytes per second, 0 to disable the watchdog
+ * @param window Time the throughput should stay below the floor
+ * @param maxRestarts Max number of the restarts of the stalled upload
+ * */
+public record StallPolicy(long minBytesPerSecond, Duration window, int maxRestarts) implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Max number of the restarts of the stalled upload
+     * */
+    public static final int MAX_RESTARTS = Integer.getInteger(StallPolicy.class.getName() + ".maxRestarts", 2);
+
+    public static final StallPolicy DEFAULT = new StallPolicy(10 * 1024, Duration.ofMinutes(5), MAX_RESTARTS);
+
+    public static final StallPolicy DISABLED = new StallPolicy(0, Duration.ZERO, 0);
+
+    public boolean isEnabled() {
+        return minBytesPerSecond > 0 && window.toMillis() > 0;
+    }
+}
@@ -0,0 +1,58 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Throughput of the upload over the sliding window of the {@link StallPolicy}, sampled by {@link TransferClient}
+ * while it waits for the response. The upload is stalled when the bytes sent within the whole window
+ * are below the floor; the first window starts with the upload.
+ * */
+class StallWatchdog {
+    private final StallPolicy policy;
+    private final long start;
+    // (time, sent bytes) from the last sample at or before the window start
+    private final Deque<long[]> samples = new ArrayDeque<>();
+    private double windowRate = -1;
+
+    StallWatchdog(StallPolicy policy, long start) {
+        this.policy = policy;
+        this.start = start;
+        samples.addLast(new long[] {start, 0});
+    }
+
+    /**
+     * Record the number of bytes sent so far and check the throughput over the window
+     *
+     * @return True if the throughput stayed below the floor for the whole window
+     * */
+    boolean isStalled(long sent, long now) {
+        if (!policy.isEnabled()) {
+            return false;
+        }
+        samples.addLast(new long[] {now, sent});
+        long windowStart = now - policy.window().toMillis();
+        while (samples.size() > 1) {
+            long[] first = samples.pollFirst();
+            if (samples.peekFirst()[0] > windowStart) {
+                samples.addFirst(first);
+                break;
+            }
+        }
+        long[] first = samples.peekFirst();
+        windowRate = now > first[0] ? (sent - first[1]) * 1000.0 / (now - first[0]) : -1;
+        return now - start >= policy.window().toMillis() && windowRate >= 0
+                && windowRate < policy.minBytesPerSecond();
+    }
+
+    StallPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the throughput over the last window in bytes per second, -1 if it is not measured
+     * */
+    double getWindowRate() {
+        return windowRate;
+    }
+}
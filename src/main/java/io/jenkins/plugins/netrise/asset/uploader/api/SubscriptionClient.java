@@ -0,0 +1,349 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * GraphQL subscriptions over one outbound WebSocket ({@code graphql-transport-ws} protocol).
+ * All the subscriptions of the controller share the connection, it is opened with the first subscription
+ * and closed with the last one. If the server doesn't accept the connection, the client doesn't retry it
+ * for a while and {@link #subscribe} returns false, so the caller can poll instead.
+ * The subscriptions are sent again when the lost connection is restored. The subscription that ends
+ * without being unsubscribed (server error, server completion or the connection can't be restored)
+ * is reported to its end listener, so the caller can poll right away.
+ * */
+public class SubscriptionClient implements WebSocket.Listener {
+    private static final Logger log = Logger.getLogger(SubscriptionClient.class);
+
+    public static final String SUBPROTOCOL = "graphql-transport-ws";
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final long RETRY_DELAY = 5 * 60 * 1000; // 5 minutes
+
+    private final Client client;
+    private final URI uri;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final StringBuilder text = new StringBuilder();
+
+    private final Object sendLock = new Object();
+
+    private volatile WebSocket webSocket;
+    private volatile CompletableFuture<Void> acknowledged;
+    private volatile WebSocket opening;
+    // the connection being opened, the callers wait for it without holding the monitor
+    private CompletableFuture<WebSocket> connecting;
+    private CompletableFuture<?> sending = CompletableFuture.completedFuture(null);
+    private long unavailableUntil;
+
+    /**
+     * @param client Authenticates the connection
+     * @param uri GraphQL endpoint, http(s) scheme is replaced with ws(s)
+     * */
+    public SubscriptionClient(Client client, URI uri) {
+        this.client = client;
+        this.uri = URI.create(uri.toString().replaceFirst("^http", "ws"));
+    }
+
+    /**
+     * Subscribe to the query results
+     *
+     * @param id Subscription ID unique for the client
+     * @param query Subscription query
+     * @param variables Query variables
+     * @param listener Receives the {@code next} payloads (data and errors)
+     * @param endListener Receives the reason when the subscription ends without being unsubscribed
+     *
+     * @return false if the server is not available and the caller should poll instead
+     * */
+    public boolean subscribe(String id, String query, Object variables, Consumer<JsonNode> listener,
+                             Consumer<ClientException> endListener) {
+        Subscription subscription = new Subscription(query, variables, listener, endListener);
+        if (connection() == null) {
+            return false;
+        }
+        synchronized (this) {
+            subscriptions.put(id, subscription);
+            // the connection lost meanwhile sends it when it is restored
+            send(subscribeMessage(id, subscription));
+        }
+        return true;
+    }
+
+    /**
+     * Stop the subscription, the connection is closed with the last one
+     * */
+    public synchronized void unsubscribe(String id) {
+        if (subscriptions.remove(id) == null || webSocket == null) {
+            return;
+        }
+        send(message("complete", id, null));
+        if (subscriptions.isEmpty()) {
+            close();
+        }
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Close the connection
+     * */
+    public synchronized void close() {
+        if (webSocket != null) {
+            WebSocket ws = webSocket;
+            webSocket = null;
+            synchronized (sendLock) {
+                sending.whenComplete((r, e) -> ws.sendClose(WebSocket.NORMAL_CLOSURE, ""));
+            }
+        }
+    }
+
+    /**
+     * Return the open connection or open a new one, the active subscriptions are sent on the new connection
+     *
+     * @return The connection or null if the server is not available
+     * */
+    private WebSocket connection() {
+        CompletableFuture<WebSocket> pending;
+        boolean opening = false;
+        synchronized (this) {
+            WebSocket ws = webSocket;
+            if (ws != null && !ws.isOutputClosed()) {
+                return ws;
+            }
+            if (connecting == null) {
+                if (System.currentTimeMillis() < unavailableUntil) {
+                    return null;
+                }
+                connecting = new CompletableFuture<>();
+                opening = true;
+            }
+            pending = connecting;
+        }
+        if (opening) {
+            // the connection is opened outside the monitor, so subscribe() and unsubscribe() don't wait for it
+            WebSocket ws = open();
+            synchronized (this) {
+                connecting = null;
+                webSocket = ws;
+                if (ws != null) {
+                    subscriptions.forEach((id, subscription) -> send(subscribeMessage(id, subscription)));
+                }
+            }
+            pending.complete(ws);
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Open the connection and wait for the server acknowledgement
+     *
+     * @return The connection or null if the server is not available
+     * */
+    private WebSocket open() {
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        acknowledged = ack;
+        WebSocket ws = null;
+        try {
+            ws = client.getHttpClient().newWebSocketBuilder()
+                    .subprotocols(SUBPROTOCOL)
+                    .connectTimeout(CONNECT_TIMEOUT)
+                    .buildAsync(uri, this)
+                    .get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            opening = ws;
+            synchronized (sendLock) {
+                sending = CompletableFuture.completedFuture(null);
+            }
+            ws.sendText(message("connection_init", null,
+                    Map.of(Client.AUTHORIZATION_HEADER, client.authenticate().getAccessToken())), true)
+                    .get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            ack.get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            log.debug("Subscription connection is opened:", uri.getHost());
+            return ws;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable(ws, "interrupted");
+            return null;
+        } catch (Exception e) {
+            unavailable(ws, e.getMessage());
+            return null;
+        } finally {
+            opening = null;
+        }
+    }
+
+    private void unavailable(WebSocket ws, String reason) {
+        log.warn("Subscriptions are not available, the status is polled:", reason);
+        if (ws != null) {
+            ws.abort();
+        }
+        synchronized (this) {
+            unavailableUntil = System.currentTimeMillis() + RETRY_DELAY;
+        }
+    }
+
+    /**
+     * Queue the message, the next one is sent when the previous one is completed
+     * */
+    private void send(String message) {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            return;
+        }
+        synchronized (sendLock) {
+            sending = sending.handle((r, e) -> null).thenCompose(r -> ws.sendText(message, true));
+        }
+    }
+
+    private static String message(String type, String id, Object payload) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        if (id != null) {
+            message.put("id", id);
+        }
+        message.put("type", type);
+        if (payload != null) {
+            message.put("payload", payload);
+        }
+        try {
+            return Client.MAPPER.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new ClientException("Couldn't serialize the subscription message", e);
+        }
+    }
+
+    private static String subscribeMessage(String id, Subscription subscription) {
+        return message("subscribe", id, Map.of("query", subscription.query(), "variables", subscription.variables()));
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            String message = text.toString();
+            text.setLength(0);
+            handle(webSocket, message);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        webSocket.request(1);
+        return null;
+    }
+
+    private void handle(WebSocket ws, String message) {
+        JsonNode node;
+        try {
+            node = Client.MAPPER.readTree(message);
+        } catch (JsonProcessingException e) {
+            log.warn("Invalid subscription message:", e.getMessage());
+            return;
+        }
+        String type = node.path("type").asText();
+        String id = node.path("id").asText(null);
+        switch (type) {
+            case "connection_ack" -> {
+                CompletableFuture<Void> ack = acknowledged;
+                if (ack != null) {
+                    ack.complete(null);
+                }
+            }
+            case "ping" -> {
+                if (ws == webSocket) {
+                    send(message("pong", null, null));
+                }
+            }
+            case "next" -> {
+                Subscription subscription = id != null ? subscriptions.get(id) : null;
+                if (subscription != null) {
+                    subscription.listener().accept(node.path("payload"));
+                }
+            }
+            case "error" -> {
+                log.warn("Subscription error", id, node.path("payload").toString());
+                end(id, new ClientException("Subscription error", node.path("payload").toString()));
+            }
+            case "complete" -> end(id, new ClientException("Subscription is completed by the server"));
+            default -> log.debug("Unexpected subscription message:", type);
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        log.debug("Subscription connection is closed:", statusCode, reason);
+        lost(webSocket);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        log.warn("Subscription connection error:", error.getMessage());
+        lost(webSocket);
+    }
+
+    /**
+     * Remove the subscription ended by the server and notify its end listener
+     * */
+    private void end(String id, ClientException reason) {
+        Subscription subscription = id != null ? subscriptions.remove(id) : null;
+        if (subscription != null) {
+            subscription.endListener().accept(reason);
+        }
+    }
+
+    /**
+     * Restore the lost connection and the active subscriptions.
+     * The subscriptions end if the connection can't be restored.
+     * */
+    private void lost(WebSocket ws) {
+        CompletableFuture<Void> ack = acknowledged;
+        if (ws == opening && ack != null) {
+            // the connection being opened is closed before the acknowledgement
+            ack.completeExceptionally(new ClientException("Subscription connection is closed"));
+        }
+        synchronized (this) {
+            if (ws != webSocket) {
+                return;
+            }
+            webSocket = null;
+        }
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            if (!subscriptions.isEmpty() && connection() == null) {
+                for (String id : List.copyOf(subscriptions.keySet())) {
+                    end(id, new ClientException("Subscription connection is lost"));
+                }
+            }
+        });
+    }
+
+    private record Subscription(String query, Object variables, Consumer<JsonNode> listener,
+                                Consumer<ClientException> endListener) {
+    }
+}
@@ -0,0 +1,21 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Timeouts of the request phases, so a half-open connection fails the request instead of hanging the build.
+ *
+ * @param connect TCP/TLS connection timeout
+ * @param auth Token request timeout
+ * @param graphql GraphQL request timeout (until the response headers are received)
+ * @param uploadIdle Max time without the upload progress: no bytes are sent and no response is received
+ * */
+public record Timeouts(Duration connect, Duration auth, Duration graphql, Duration uploadIdle) implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final Timeouts DEFAULT = new Timeouts(Duration.ofSeconds(10), Duration.ofSeconds(30),
+            Duration.ofSeconds(60), Duration.ofMinutes(2));
+}
@@ -0,0 +1,316 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Send the file to the presigned upload url.
+ * It doesn't need the credentials so it can run on the agent close to the file.
+ * The underlying HTTP client is shared by all the transfers of the JVM.
+ * SHA-256 and MD5 of the body are computed while it is sent, the storage ETag is checked against the MD5.
+ * The upload stalled in the middle of the body (no progress or the throughput below the {@link StallPolicy} floor)
+ * is cancelled, which closes its connection, and sent again from the start. The transfers go over HTTP/1.1:
+ * a cancelled HTTP/2 stream would only be reset, and the restart would share the stalled connection.
+ * */
+public class TransferClient {
+    private static final Logger log = Logger.getLogger(TransferClient.class);
+
+    /**
+     * Send {@code Content-MD5} when the digest is known before the upload, so the storage rejects a corrupted body.
+     * Can be disabled for the storages that don't accept the header on presigned urls.
+     * */
+    public static final boolean SEND_CONTENT_MD5 = Boolean.parseBoolean(
+            System.getProperty(TransferClient.class.getName() + ".sendContentMd5", "true"));
+
+    private static final long MAX_PROGRESS_CHECK_INTERVAL = 1000;
+
+    private static final HttpClient sharedHttpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Timeouts.DEFAULT.connect())
+            .build();
+
+    private final Duration idleTimeout;
+    private final String name;
+    private final PrintStream progressLog;
+    private volatile StallPolicy stallPolicy = StallPolicy.DEFAULT;
+
+    public TransferClient() {
+        this(Timeouts.DEFAULT.uploadIdle());
+    }
+
+    /**
+     * @param idleTimeout The transfer is aborted if no bytes are sent and no response is received for this time
+     * */
+    public TransferClient(Duration idleTimeout) {
+        this(idleTimeout, null, null);
+    }
+
+    /**
+     * @param idleTimeout The transfer is aborted if no bytes are sent and no response is received for this time
+     * @param name The file name shown in the progress reports
+     * @param progressLog Receives the progress reports (e.g. the build console), nullable
+     * */
+    public TransferClient(Duration idleTimeout, String name, PrintStream progressLog) {
+        this.idleTimeout = idleTimeout;
+        this.name = name;
+        this.progressLog = progressLog;
+    }
+
+    /**
+     * Set when the upload with the collapsed throughput is restarted
+     * */
+    public void setStallPolicy(StallPolicy stallPolicy) {
+        this.stallPolicy = stallPolicy;
+    }
+
+    protected HttpClient getHttpClient() {
+        return sharedHttpClient;
+    }
+
+    protected HttpRequest.Builder getRequestBuilder(URI uri) {
+        return HttpRequest.newBuilder()
+                .uri(uri);
+    }
+
+    /**
+     * PUT request to upload the file
+     * Can throw {@link ClientException} if there is some network error or IOException
+     *
+     * @param uri The presigned upload url
+     * @param path The path to the file
+     *
+     * @return Transfer result with the size, checksum and timing
+     * */
+    public TransferResult put(URI uri, Path path) {
+        return put(uri, path, null);
+    }
+
+    /**
+     * PUT request to upload the file with the known MD5 (e.g. the Jenkins fingerprint)
+     * Can throw {@link ClientException} if there is some network error or IOException
+     *
+     * @param uri The presigned upload url
+     * @param path The path to the file
+     * @param contentMd5 MD5 hex digest of the file, nullable
+     *
+     * @return Transfer result with the size, checksums and timing
+     * */
+    public TransferResult put(URI uri, Path path, String contentMd5) {
+        HttpRequest.BodyPublisher body;
+        try {
+            body = FileBodyPublisher.ofFile(path);
+        } catch (FileNotFoundException e) {
+            log.error(e.getLocalizedMessage(), e);
+            throw new ClientException("File processing error: " + path, e);
+        }
+
+        return put(uri, body, contentMd5);
+    }
+
+    /**
+     * PUT request to upload the stream (e.g. the archived artifact) without a temporary file
+     * Can throw {@link ClientException} if there is some network error or IOException
+     *
+     * @param uri The presigned upload url
+     * @param source Opens the stream, it may be called again on retry
+     * @param size The stream length
+     *
+     * @return Transfer result with the size, checksum and timing
+     * */
+    public TransferResult put(URI uri, StreamSource source, long size) {
+        return put(uri, source, size, null);
+    }
+
+    /**
+     * PUT request to upload the stream with the known MD5 (e.g. the Jenkins fingerprint)
+     * Can throw {@link ClientException} if there is some network error or IOException
+     *
+     * @param uri The presigned upload url
+     * @param source Opens the stream, it may be called again on retry
+     * @param size The stream length
+     * @param contentMd5 MD5 hex digest of the stream, nullable
+     *
+     * @return Transfer result with the size, checksums and timing
+     * */
+    public TransferResult put(URI uri, StreamSource source, long size, String contentMd5) {
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return source.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // the length is known so the body is not sent in chunks (presigned urls don't accept them)
+        return put(uri, HttpRequest.BodyPublishers.fromPublisher(stream, size), contentMd5);
+    }
+
+    private TransferResult put(URI uri, HttpRequest.BodyPublisher publisher, String contentMd5) {
+        boolean withMd5 = SEND_CONTENT_MD5 && contentMd5 != null && !contentMd5.isBlank();
+        TransferResult result = transfer(uri, publisher, withMd5 ? contentMd5 : null);
+        if (withMd5 && !result.isSuccessful() && result.md5() != null && !contentMd5.equalsIgnoreCase(result.md5())) {
+            // the file is changed after it was fingerprinted, the storage rejects the digest
+            log.warn("Content-MD5", contentMd5, "doesn't match the sent bytes", result.md5());
+            report("Upload of " + (name != null ? name : uri.getHost())
+                    + " is rejected: the file doesn't match its fingerprint, it is sent again without Content-MD5");
+            return transfer(uri, publisher, null);
+        }
+        return result;
+    }
+
+    /**
+     * Send the body, restarting the stalled transfer
+     *
+     * @param contentMd5 MD5 hex digest sent in the 'Content-MD5' header, nullable
+     * */
+    private TransferResult transfer(URI uri, HttpRequest.BodyPublisher publisher, String contentMd5) {
+        String fileName = name != null ? name : uri.getHost();
+        StallPolicy policy = stallPolicy;
+        for (int restarts = 0; ; restarts++) {
+            // a new body and request each time: the cancelled exchange may still call the previous body
+            ChecksumBodyPublisher body = new ChecksumBodyPublisher(publisher,
+                    ChecksumBodyPublisher.SHA_256, ChecksumBodyPublisher.MD5);
+            try {
+                return send(request(uri, body, contentMd5), body, fileName, policy);
+            } catch (StalledException e) {
+                if (restarts >= policy.maxRestarts()) {
+                    throw e;
+                }
+                // the cancelled HTTP/1.1 exchange closed the stalled connection, the body is subscribed again
+                report("Upload of " + fileName + " is restarted on a new connection ("
+                        + (restarts + 1) + " of " + policy.maxRestarts() + ")");
+            }
+        }
+    }
+
+    private HttpRequest request(URI uri, ChecksumBodyPublisher body, String contentMd5) {
+        HttpRequest.Builder builder = getRequestBuilder(uri)
+                .version(HttpClient.Version.HTTP_1_1)
+                .PUT(body);
+        // the header goes before the body, so it is sent only when the digest is known up front
+        if (contentMd5 != null) {
+            builder.header("Content-MD5", Base64.getEncoder().encodeToString(HexFormat.of().parseHex(contentMd5)));
+        }
+        return builder.build();
+    }
+
+    private TransferResult send(HttpRequest request, ChecksumBodyPublisher body, String fileName, StallPolicy policy) {
+        log.debug("Send ", request.method(), " request to ", request.uri().getHost());
+
+        long start = System.currentTimeMillis();
+        TransferProgress progress = new TransferProgress(fileName, body.contentLength(), progressLog);
+        HttpResponse<String> response = await(getHttpClient().sendAsync(request,
+                new BoundedBodyHandler(Client.MAX_LOGGED_BODY_SIZE, Client.MAX_LOGGED_BODY_SIZE)), body, progress,
+                new StallWatchdog(policy, start));
+
+        TransferResult result = new TransferResult(response.statusCode(), body.getSize(),
+                body.getDigest(ChecksumBodyPublisher.SHA_256), body.getDigest(ChecksumBodyPublisher.MD5),
+                response.headers().firstValue("ETag").orElse(null), System.currentTimeMillis() - start);
+        if (!result.isIntegrityValid()) {
+            log.error("Upload integrity error: stored ETag", result.etag(), "doesn't match MD5", result.md5());
+        } else if (!result.isSuccessful()) {
+            log.error("Upload error", response.statusCode(), response.body());
+        }
+
+        return result;
+    }
+
+    /**
+     * Wait for the response while the body is being sent. The large file may take hours,
+     * so there is no overall timeout: the transfer is aborted only when it makes no progress
+     * or its throughput collapses. The progress is reported while waiting.
+     * */
+    private HttpResponse<String> await(CompletableFuture<HttpResponse<String>> future, ChecksumBodyPublisher body,
+                                       TransferProgress progress, StallWatchdog watchdog) {
+        long interval = Math.max(1, Math.min(MAX_PROGRESS_CHECK_INTERVAL, idleTimeout.toMillis() / 4));
+        long sent = body.getSize();
+        long progressTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                try {
+                    return future.get(interval, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    long now = System.currentTimeMillis();
+                    progress.update(body.getSize());
+                    // once the whole body is sent, only the response is awaited
+                    boolean sending = body.getSize() < body.contentLength();
+                    if (sending && watchdog.isStalled(body.getSize(), now)) {
+                        future.cancel(true);
+                        stalled(progress, watchdog);
+                        throw new StalledException("Upload is stalled: below "
+                                + watchdog.getPolicy().minBytesPerSecond() / 1024 + " KB/s for "
+                                + watchdog.getPolicy().window().toSeconds() + " s");
+                    }
+                    if (body.getSize() != sent) {
+                        sent = body.getSize();
+                        progressTime = now;
+                    } else if (now - progressTime >= idleTimeout.toMillis()) {
+                        future.cancel(true);
+                        log.error("Upload is stalled at", sent, "bytes");
+                        String message = "Upload is stalled: no progress in " + idleTimeout.toSeconds() + " s";
+                        throw sending ? new StalledException(message) : new ClientException(message);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new ClientException("Request sending error.", e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ClientException("Request sending is interrupted.", e);
+        }
+    }
+
+    /**
+     * Log the statistics of the stalled upload, on the agent they go to the build console
+     * */
+    private void stalled(TransferProgress progress, StallWatchdog watchdog) {
+        String stats = String.format(Locale.ROOT,
+                "Upload of %s is stalled at %d of %d bytes: %.1f KB/s over the last %d s, average %.1f KB/s",
+                progress.getName(), progress.getSent(), progress.getTotal(), watchdog.getWindowRate() / 1024,
+                watchdog.getPolicy().window().toSeconds(), progress.getAverageRate() / 1024);
+        log.warn(stats);
+        report(stats);
+    }
+
+    private void report(String message) {
+        if (progressLog != null) {
+            progressLog.println(message);
+        }
+    }
+
+    /**
+     * The upload is stalled in the middle of the body, it can be restarted
+     * */
+    private static class StalledException extends ClientException {
+        StalledException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Opens the stream to upload
+     * */
+    @FunctionalInterface
+    public interface StreamSource {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,150 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Progress of the transfer reported to the build console: percent done, current and average throughput and ETA.
+ * The sent bytes are sampled by {@link TransferClient} while it waits for the response, and a report is printed
+ * every {@link #REPORT_INTERVAL} ms or every {@link #REPORT_STEP} percent, whichever comes first.
+ * */
+public class TransferProgress {
+
+    /**
+     * Max time between the reports in milliseconds (5 s by default)
+     * */
+    public static final long REPORT_INTERVAL = Long.getLong(TransferProgress.class.getName() + ".reportInterval", 5000);
+
+    /**
+     * Report when the transfer advances by this number of percents
+     * */
+    public static final int REPORT_STEP = Integer.getInteger(TransferProgress.class.getName() + ".reportStep", 5);
+
+    private static final double MB = 1024 * 1024;
+
+    private final String name;
+    private final long total;
+    private final PrintStream out;
+    private final long reportInterval;
+    private final int reportStep;
+    private final long start;
+
+    private long sent;
+    private long sampleTime;
+    private long reportTime;
+    private long reportSent;
+    private int reportPercent;
+    private double currentRate;
+
+    /**
+     * @param name The file name shown in the reports
+     * @param total Number of bytes to send, -1 if it is unknown
+     * @param out The build console, nullable to only count the bytes
+     * */
+    public TransferProgress(String name, long total, PrintStream out) {
+        this(name, total, out, REPORT_INTERVAL, REPORT_STEP, System.currentTimeMillis());
+    }
+
+    TransferProgress(String name, long total, PrintStream out, long reportInterval, int reportStep, long start) {
+        this.name = name;
+        this.total = total;
+        this.out = out;
+        this.reportInterval = reportInterval;
+        this.reportStep = Math.max(1, reportStep);
+        this.start = start;
+        this.sampleTime = start;
+        this.reportTime = start;
+    }
+
+    /**
+     * Record the number of bytes sent so far and print the report if it is due
+     * */
+    public void update(long sent) {
+        update(sent, System.currentTimeMillis());
+    }
+
+    synchronized void update(long sent, long now) {
+        this.sent = sent;
+        this.sampleTime = now;
+        if (total > 0 && reportSent >= total) {
+            // the whole body is sent, waiting for the response
+            return;
+        }
+        int percent = getPercent();
+        if (now - reportTime < reportInterval && (percent < 0 || percent < reportPercent + reportStep)) {
+            return;
+        }
+        if (now > reportTime) {
+            currentRate = (sent - reportSent) * 1000.0 / (now - reportTime);
+        }
+        reportTime = now;
+        reportSent = sent;
+        reportPercent = percent - percent % reportStep;
+        if (out != null) {
+            out.println(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * Return the percent done, -1 if the size is unknown
+     * */
+    public synchronized int getPercent() {
+        if (total <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, sent * 100 / total);
+    }
+
+    /**
+     * Return the throughput since the previous report in bytes per second
+     * */
+    public synchronized double getCurrentRate() {
+        return currentRate;
+    }
+
+    /**
+     * Return the throughput since the start in bytes per second
+     * */
+    public synchronized double getAverageRate() {
+        return sampleTime > start ? sent * 1000.0 / (sampleTime - start) : 0;
+    }
+
+    /**
+     * Return the remaining time at the average throughput in seconds, -1 if it is unknown
+     * */
+    public synchronized long getEtaSeconds() {
+        double rate = getAverageRate();
+        if (total <= 0 || rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, total - sent) / rate);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder("Uploading ").append(name).append(": ");
+        if (total > 0) {
+            report.append(String.format(Locale.ROOT, "%d%% (%.1f of %.1f MB)", getPercent(), sent / MB, total / MB));
+        } else {
+            report.append(String.format(Locale.ROOT, "%.1f MB", sent / MB));
+        }
+        report.append(String.format(Locale.ROOT, ", %.2f MB/s, average %.2f MB/s", currentRate / MB, getAverageRate() / MB));
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            report.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+/**
+ * Result of the file transfer to the upload url.
+ * Returned from the agent to the controller so it should stay lightweight.
+ *
+ * @param statusCode HTTP status code of the upload request
+ * @param size Number of bytes sent
+ * @param sha256 SHA-256 hex digest of the sent bytes
+ * @param md5 MD5 hex digest of the sent bytes
+ * @param etag ETag returned by the storage, if any
+ * @param durationMillis Transfer time in milliseconds
+ * */
+public record TransferResult(int statusCode, long size, String sha256, String md5, String etag,
+                             long durationMillis) implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    private static final Pattern MD5_ETAG = Pattern.compile("\"?([0-9a-fA-F]{32})\"?");
+
+    /**
+     * Return true if the upload url accepted the file and the stored content matches the sent one
+     * */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300 && isIntegrityValid();
+    }
+
+    /**
+     * Compare the sent bytes with the ETag of the stored object.
+     * The ETag of a single-part upload is the MD5 of the content on S3-compatible storages,
+     * any other ETag (multipart, weak, opaque) can't be checked and is accepted.
+     * */
+    public boolean isIntegrityValid() {
+        if (etag == null || md5 == null) {
+            return true;
+        }
+        var matcher = MD5_ETAG.matcher(etag.trim());
+        return !matcher.matches() || matcher.group(1).equalsIgnoreCase(md5);
+    }
+
+    /**
+     * Return average transfer speed in bytes per second
+     * */
+    public long getBytesPerSecond() {
+        return durationMillis > 0 ? size * 1000 / durationMillis : size;
+    }
+}
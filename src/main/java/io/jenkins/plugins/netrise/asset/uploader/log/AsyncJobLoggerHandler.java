@@ -0,0 +1,305 @@
+package io.jenkins.plugins.netrise.asset.uploader.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Non-blocking log handler for the build console.
+ * Records are put into a bounded ring buffer and written by a single background thread,
+ * so the threads that publish records (e.g. the upload) never wait for the remote build console.
+ * When the buffer is getting full the low-priority records (below {@link Level#WARNING}) are sampled,
+ * when it is full they are dropped. The number of dropped records is reported into the output.
+ * The lines of the build step go through {@link #getConsole()} into the same buffer, so the console keeps
+ * the execution order; they are never dropped.
+ * */
+public class AsyncJobLoggerHandler extends Handler {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Only every N-th low-priority record is kept when the buffer is more than 3/4 full
+     * */
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    private static final long CLOSE_TIMEOUT = 5 * 1000; // 5 seconds
+
+    private final OutputStream out;
+    private final LogRecord[] buffer;
+    private final int sampleRate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Thread writer;
+    private final PrintStream console;
+
+    private int head;
+    private int size;
+    private long sampled;
+    private long dropped;
+    private volatile boolean closed;
+
+    public AsyncJobLoggerHandler(OutputStream out) {
+        this(out, DEFAULT_CAPACITY, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param out The build console stream. It is not closed by the handler
+     * @param capacity Max number of records waiting to be written
+     * @param sampleRate Keep every N-th low-priority record under backpressure
+     * */
+    public AsyncJobLoggerHandler(OutputStream out, int capacity, int sampleRate) {
+        if (out == null) {
+            throw new IllegalArgumentException("'out' should be defined.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("'capacity' should be positive.");
+        }
+        this.out = out;
+        this.buffer = new LogRecord[capacity];
+        this.sampleRate = Math.max(1, sampleRate);
+        setFormatter(new SimpleFormatter());
+        this.console = new PrintStream(new ConsoleStream(), true, StandardCharsets.UTF_8);
+
+        writer = new Thread(this::drain, "NetRise build console writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static boolean isLowPriority(LogRecord record) {
+        return record.getLevel().intValue() < Level.WARNING.intValue();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        offer(record, isLowPriority(record));
+    }
+
+    /**
+     * Return the stream of the build step lines, written in order with the log records.
+     * The lines written after the handler is closed go straight to the underlying stream.
+     * */
+    public PrintStream getConsole() {
+        return console;
+    }
+
+    /**
+     * @return False if the handler is closed
+     * */
+    private boolean offer(LogRecord record, boolean lowPriority) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (lowPriority) {
+                if (size == buffer.length) {
+                    dropped++;
+                    return true;
+                }
+                if (size * 4 >= buffer.length * 3 && sampled++ % sampleRate != 0) {
+                    dropped++;
+                    return true;
+                }
+            } else if (size == buffer.length) {
+                // the buffer is full: the oldest record gives place to the important one
+                buffer[head] = null;
+                head = (head + 1) % buffer.length;
+                size--;
+                dropped++;
+            }
+            buffer[(head + size) % buffer.length] = record;
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writer loop: takes all the pending records at once and writes them as a single chunk
+     * */
+    private void drain() {
+        LogRecord[] batch = new LogRecord[buffer.length];
+        while (true) {
+            lock.lock();
+            try {
+                while (size == 0 && dropped == 0 && !closed) {
+                    notEmpty.await();
+                }
+                if (size == 0 && dropped == 0) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            writePending(batch);
+        }
+    }
+
+    /**
+     * Take all the pending records at once and write them as a single chunk
+     * */
+    private void writePending(LogRecord[] batch) {
+        int count;
+        long lost;
+        lock.lock();
+        try {
+            count = size;
+            for (int i = 0; i < count; i++) {
+                int idx = (head + i) % buffer.length;
+                batch[i] = buffer[idx];
+                buffer[idx] = null;
+            }
+            head = 0;
+            size = 0;
+            lost = dropped;
+            dropped = 0;
+        } finally {
+            lock.unlock();
+        }
+        if (count > 0 || lost > 0) {
+            write(batch, count, lost);
+        }
+    }
+
+    private void write(LogRecord[] batch, int count, long lost) {
+        StringBuilder sb = new StringBuilder();
+        if (lost > 0) {
+            sb.append("... ").append(lost).append(" log record(s) skipped ...").append(System.lineSeparator());
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                sb.append(batch[i] instanceof ConsoleLine ? batch[i].getMessage() : getFormatter().format(batch[i]));
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            }
+            batch[i] = null;
+        }
+        try {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * Return the number of records waiting to be written
+     * */
+    public int getPending() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the pending records and stop the writer thread. The underlying stream stays open.
+     * The records are written even if the calling thread is interrupted (e.g. the build is aborted):
+     * the writer is waited for uninterruptibly, and what it doesn't write in time is written by the caller.
+     * */
+    @Override
+    public void close() {
+        console.flush();
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        long end = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        try {
+            long left;
+            while (writer.isAlive() && (left = end - System.currentTimeMillis()) > 0) {
+                try {
+                    writer.join(left);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+        writePending(new LogRecord[buffer.length]);
+    }
+
+    /**
+     * Line of the build step, written as is
+     * */
+    private static class ConsoleLine extends LogRecord {
+        ConsoleLine(String line) {
+            super(Level.INFO, line);
+        }
+    }
+
+    /**
+     * Splits the written bytes into lines, every line becomes a record in the buffer
+     * */
+    private class ConsoleStream extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            line.write(b);
+            if (b == '\n') {
+                flush();
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (line.size() == 0) {
+                return;
+            }
+            String text = line.toString(StandardCharsets.UTF_8);
+            line.reset();
+            if (!offer(new ConsoleLine(text), false)) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package io.jenkins.plugins.netrise.asset.uploader.log;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -17,12 +17,20 @@ public class Logger {
         return new Logger(clz != null ? clz.getName() : null);
     }
 
-    private static final List<Logger> loggers = new ArrayList<>();
+    private static final List<Logger> loggers = new CopyOnWriteArrayList<>();
+
+    private static final List<Handler> handlers = new CopyOnWriteArrayList<>();
 
     public static void addHandler(Handler handler) {
+        handlers.add(handler);
         loggers.forEach(l -> l.addHandler0(handler));
     }
 
+    public static void removeHandler(Handler handler) {
+        handlers.remove(handler);
+        loggers.forEach(l -> l.removeHandler0(handler));
+    }
+
     private final java.util.logging.Logger logger;
 
     public Logger(String name) {
@@ -34,6 +42,7 @@ public class Logger {
             }
         };
         logger.addHandler(consoleHandler);
+        handlers.forEach(logger::addHandler);
 
         loggers.add(this);
     }
@@ -42,6 +51,10 @@ public class Logger {
         logger.addHandler(handler);
     }
 
+    private void removeHandler0(Handler handler) {
+        logger.removeHandler(handler);
+    }
+
     private void log(Level level, Object... msg) {
         logger.log(level, msg != null ? Stream.of(msg).map(Objects::toString).collect(Collectors.joining(" ")) : "null");
     }
@@ -0,0 +1,15 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+/**
+ * Asset details and analysis status
+ * */
+public record AssetDetails(
+        String id,
+        String name,
+        String model,
+        String version,
+        String manufacturer,
+        String analysisStatus,
+        String createdAt
+) {
+}
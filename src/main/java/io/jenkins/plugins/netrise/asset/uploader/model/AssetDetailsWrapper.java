@@ -0,0 +1,4 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+public record AssetDetailsWrapper<T> (T asset) {
+}
@@ -0,0 +1,7 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+/**
+ * Asset lookup input data instance
+ * */
+public record AssetInput(String assetId) {
+}
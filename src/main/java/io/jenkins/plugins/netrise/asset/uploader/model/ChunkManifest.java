@@ -0,0 +1,21 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+import java.util.List;
+
+/**
+ * File assembled from the chunks stored in the chunk store
+ *
+ * @param fileName The file name
+ * @param size The file size
+ * @param sha256 SHA-256 of the whole file
+ * @param chunks The chunks in the file order
+ * */
+public record ChunkManifest(String fileName, long size, String sha256, List<Chunk> chunks) {
+
+    /**
+     * @param sha256 SHA-256 of the chunk
+     * @param length Chunk length
+     * */
+    public record Chunk(String sha256, int length) {
+    }
+}
@@ -0,0 +1,11 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+import java.util.List;
+
+/**
+ * Chunk store response to the manifest
+ *
+ * @param missing Hashes of the chunks the store doesn't have, the manifest is not accepted if it is not empty
+ * */
+public record ChunkManifestResponse(List<String> missing) {
+}
@@ -0,0 +1,82 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GraphQL query sent by its SHA-256 hash (automatic persisted queries): the endpoint keeps the parsed document,
+ * so the query text is sent only once, when the endpoint replies {@code PersistedQueryNotFound}.
+ *
+ * @param query The query text, null if only the hash is sent
+ * @param variables Query variables
+ * @param extensions The persisted query hash
+ * */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PersistedQuery<T>(String query, Variables<T> variables, Map<String, Object> extensions) {
+
+    public static final String NOT_FOUND = "PersistedQueryNotFound";
+    public static final String NOT_SUPPORTED = "PersistedQueryNotSupported";
+
+    private static final String NOT_FOUND_CODE = "PERSISTED_QUERY_NOT_FOUND";
+    private static final String NOT_SUPPORTED_CODE = "PERSISTED_QUERY_NOT_SUPPORTED";
+
+    // the queries are constants, each one is hashed once
+    private static final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * Return the query sent by the hash only
+     * */
+    public static <T> PersistedQuery<T> hashOf(Query<T> query) {
+        return new PersistedQuery<>(null, query.variables(), extensions(query.query()));
+    }
+
+    /**
+     * Return the query sent with its text, so the endpoint stores it under the hash
+     * */
+    public static <T> PersistedQuery<T> of(Query<T> query) {
+        return new PersistedQuery<>(query.query(), query.variables(), extensions(query.query()));
+    }
+
+    private static Map<String, Object> extensions(String query) {
+        return Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", sha256(query)));
+    }
+
+    /**
+     * Return the SHA-256 hex digest of the query text
+     * */
+    public static String sha256(String query) {
+        return hashes.computeIfAbsent(query, q -> {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of().formatHex(digest.digest(q.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Return true if the endpoint doesn't know the hash and the query text should be sent
+     * */
+    public static boolean isNotFound(QueryResponse<?> response) {
+        return hasError(response, NOT_FOUND, NOT_FOUND_CODE);
+    }
+
+    /**
+     * Return true if the endpoint doesn't support the persisted queries
+     * */
+    public static boolean isNotSupported(QueryResponse<?> response) {
+        return hasError(response, NOT_SUPPORTED, NOT_SUPPORTED_CODE);
+    }
+
+    private static boolean hasError(QueryResponse<?> response, String message, String code) {
+        return response.errors() != null && response.errors().stream()
+                .anyMatch(e -> message.equals(e.message()) || code.equals(e.code()));
+    }
+}
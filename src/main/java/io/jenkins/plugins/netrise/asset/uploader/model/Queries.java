@@ -24,6 +24,19 @@ public interface Queries {
             }
             """);
 
+    /**
+     * Query to submit asset by reference: the file is downloaded by NetRise from the provided url
+     * */
+    String SUBMIT_ASSET_URL_QUERY = flat("""
+            mutation SubmitUrl($args: SubmitAssetInput, $fileName: String!, $downloadUrl: String!) {
+              asset {
+                submitUrl(args: $args, fileName: $fileName, downloadUrl: $downloadUrl) {
+                  uploadId
+                }
+              }
+            }
+            """);
+
     /**
      * Query to validate asset upload status
      * */
@@ -36,4 +49,43 @@ public interface Queries {
                 }
             }
             """);
+
+    /**
+     * The cheapest query: opens the connection to the endpoint and keeps it alive
+     * */
+    String PING_QUERY = flat("""
+            query Ping {
+                __typename
+            }
+            """);
+
+    /**
+     * Subscription to the asset upload status changes
+     * */
+    String ASSET_UPLOAD_SUBSCRIPTION = flat("""
+            subscription AssetUpload($args: AssetUploadInput) {
+                assetUpload(args: $args) {
+                    uploadId
+                    assetId
+                    uploaded
+                }
+            }
+            """);
+
+    /**
+     * Query to get asset details and analysis status
+     * */
+    String ASSET_DETAILS_QUERY = flat("""
+            query Asset($args: AssetInput) {
+                asset(args: $args) {
+                    id
+                    name
+                    model
+                    version
+                    manufacturer
+                    analysisStatus
+                    createdAt
+                }
+            }
+            """);
 }
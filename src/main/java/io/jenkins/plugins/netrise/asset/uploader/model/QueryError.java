@@ -1,3 +1,22 @@
 package io.jenkins.plugins.netrise.asset.uploader.model;
 
-public record QueryError(String message) {}
+import java.util.Map;
+
+/**
+ * @param message Error message
+ * @param extensions Error details, e.g. the error code, nullable
+ * */
+public record QueryError(String message, Map<String, Object> extensions) {
+
+    public QueryError(String message) {
+        this(message, null);
+    }
+
+    /**
+     * Return the error code from the extensions, null if there is none
+     * */
+    public String code() {
+        Object code = extensions != null ? extensions.get("code") : null;
+        return code != null ? code.toString() : null;
+    }
+}
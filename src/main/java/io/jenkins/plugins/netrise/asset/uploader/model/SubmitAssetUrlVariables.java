@@ -0,0 +1,17 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+/**
+ * Asset submit by reference query variables instance (extra field)
+ * */
+public class SubmitAssetUrlVariables<T> extends SubmitAssetVariables<T> {
+    private final String downloadUrl;
+
+    public SubmitAssetUrlVariables(T args, String fileName, String downloadUrl) {
+        super(args, fileName);
+        this.downloadUrl = downloadUrl;
+    }
+
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+}
@@ -0,0 +1,9 @@
+package io.jenkins.plugins.netrise.asset.uploader.model;
+
+public record SubmitAssetUrlWrapper<T> (SubmitUrlWrapper<T> asset) {
+    public T getData() {
+        return asset() != null ? this.asset().submitUrl() : null;
+    }
+}
+
+record SubmitUrlWrapper<T> (T submitUrl) {}
@@ -0,0 +1,147 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.AssetDetails;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache of the asset details shown on the build pages.
+ * <ul>
+ *     <li>a value younger than the TTL is returned without an API call;</li>
+ *     <li>a stale value (older than the TTL but within the stale period) is returned right away
+ *     and reloaded in the background, one reload per key at a time;</li>
+ *     <li>a missing or expired value is loaded by the caller.</li>
+ * </ul>
+ * A failed load is cached as a missing value, so the API isn't called on every view while it is unavailable.
+ * The least recently used values are evicted when the cache is full.
+ * */
+public class AssetDetailsCache {
+    private static final Logger log = Logger.getLogger(AssetDetailsCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 500;
+    public static final long DEFAULT_TTL = 5 * 60 * 1000; // 5 minutes
+    public static final long DEFAULT_STALE_TTL = 60 * 60 * 1000; // 1 hour
+
+    private final Function<String, AssetDetails> loader;
+    private final int maxSize;
+    private final long ttl;
+    private final long staleTtl;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NetRise asset details refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AssetDetailsCache(Function<String, AssetDetails> loader) {
+        this(loader, DEFAULT_MAX_SIZE, DEFAULT_TTL, DEFAULT_STALE_TTL, System::currentTimeMillis);
+    }
+
+    /**
+     * @param loader Loads the value, may throw an exception if it is not available
+     * @param maxSize Max number of the cached values
+     * @param ttl Time in milliseconds the value is fresh
+     * @param staleTtl Time in milliseconds after the TTL the stale value is returned while it is reloaded
+     * @param clock Current time in milliseconds
+     * */
+    public AssetDetailsCache(Function<String, AssetDetails> loader, int maxSize, long ttl, long staleTtl, LongSupplier clock) {
+        this.loader = loader;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.staleTtl = staleTtl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AssetDetailsCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return the value of the key
+     *
+     * @param key Asset ID
+     *
+     * @return The cached or loaded value, null if it can't be loaded
+     * */
+    public AssetDetails get(String key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long age = entry != null ? clock.getAsLong() - entry.loaded() : Long.MAX_VALUE;
+        if (age < ttl) {
+            return entry.value();
+        }
+        if (age < ttl + staleTtl) {
+            refresh(key);
+            return entry.value();
+        }
+        return load(key);
+    }
+
+    private void refresh(String key) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load(key);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private AssetDetails load(String key) {
+        AssetDetails value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException e) {
+            log.warn("Couldn't load the asset details", key, e.getMessage());
+            value = null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            // the stale details are better than nothing
+            if (value != null || entry == null || entry.value() == null) {
+                entries.put(key, new Entry(value, clock.getAsLong()));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Remove all the cached values, e.g. when the API configuration is changed
+     * */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(AssetDetails value, long loaded) {
+    }
+}
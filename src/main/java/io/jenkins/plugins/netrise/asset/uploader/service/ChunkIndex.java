@@ -0,0 +1,108 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashes of the chunks already sent to the chunk store, by asset lineage (e.g. the organization and the asset name).
+ * Only the chunks of the last {@link #GENERATIONS} uploads of the lineage are kept:
+ * the next build of the same firmware shares most of its chunks with the previous ones.
+ * */
+public class ChunkIndex {
+    private static final Logger log = Logger.getLogger(ChunkIndex.class);
+
+    public static final int GENERATIONS = 3;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path root;
+
+    public ChunkIndex(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Return the hashes of the chunks sent for the lineage
+     * */
+    public synchronized Set<String> load(String lineage) {
+        Set<String> hashes = new HashSet<>();
+        for (List<String> generation : read(lineage).generations()) {
+            hashes.addAll(generation);
+        }
+        return hashes;
+    }
+
+    /**
+     * Add the chunks of the upload to the lineage, the oldest upload is dropped
+     *
+     * @param lineage Asset lineage
+     * @param chunks Chunk hashes of the uploaded file
+     * */
+    public synchronized void add(String lineage, List<String> chunks) throws IOException {
+        List<List<String>> generations = new ArrayList<>(read(lineage).generations());
+        generations.add(new ArrayList<>(new LinkedHashSet<>(chunks)));
+        while (generations.size() > GENERATIONS) {
+            generations.remove(0);
+        }
+
+        Files.createDirectories(root);
+        Path file = getFile(lineage);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(tmp.toFile(), new Entry(lineage, generations));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forget the lineage, e.g. when the chunk store is purged
+     * */
+    public synchronized void remove(String lineage) throws IOException {
+        Files.deleteIfExists(getFile(lineage));
+    }
+
+    private Entry read(String lineage) {
+        Path file = getFile(lineage);
+        if (Files.isRegularFile(file)) {
+            try {
+                Entry entry = mapper.readValue(file.toFile(), Entry.class);
+                if (entry.generations() != null) {
+                    return entry;
+                }
+            } catch (IOException e) {
+                log.warn("Couldn't read the chunk index", file, e.getLocalizedMessage());
+            }
+        }
+        return new Entry(lineage, List.of());
+    }
+
+    private Path getFile(String lineage) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(lineage.getBytes(StandardCharsets.UTF_8));
+            return root.resolve(HexFormat.of().formatHex(hash) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param lineage Asset lineage
+     * @param generations Chunk hashes of the last uploads, the oldest first
+     * */
+    public record Entry(String lineage, List<List<String>> generations) {
+    }
+}
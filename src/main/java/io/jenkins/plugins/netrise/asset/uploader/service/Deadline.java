@@ -0,0 +1,85 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import java.time.Duration;
+
+/**
+ * Overall deadline of the upload: submit, transfer and status check.
+ * The phase timeouts are shortened to the remaining time and the upload fails when the time is over.
+ * */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Return the deadline that never expires
+     * */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Return the deadline after the timeout from now, or {@link #none()} if the timeout is not positive
+     * */
+    public static Deadline after(Duration timeout) {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+            return NONE;
+        }
+        return new Deadline(System.currentTimeMillis() + timeout.toMillis());
+    }
+
+    public boolean isDefined() {
+        return expiresAt != Long.MAX_VALUE;
+    }
+
+    /**
+     * Return the remaining time in milliseconds, 0 if the deadline is exceeded
+     * */
+    public long remaining() {
+        return isDefined() ? Math.max(0, expiresAt - System.currentTimeMillis()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Throw {@link UploadException} if the deadline is exceeded
+     *
+     * @param phase The upload phase for the error message
+     * */
+    public void check(String phase) {
+        if (remaining() == 0) {
+            throw exceeded(phase);
+        }
+    }
+
+    /**
+     * Return the exception of the exceeded deadline
+     *
+     * @param phase The upload phase for the error message
+     * */
+    public UploadException exceeded(String phase) {
+        return new UploadException("The upload deadline is exceeded: " + phase);
+    }
+
+    /**
+     * Return the phase timeout shortened to the remaining time
+     * Can throw {@link UploadException} if the deadline is exceeded
+     *
+     * @param phase The upload phase for the error message
+     * @param timeout The phase timeout
+     * */
+    public Duration timeout(String phase, Duration timeout) {
+        check(phase);
+        return isDefined() ? Duration.ofMillis(Math.max(1, Math.min(timeout.toMillis(), remaining()))) : timeout;
+    }
+
+    /**
+     * Return the wait time shortened to the remaining time
+     * */
+    public long limit(long millis) {
+        return Math.min(millis, remaining());
+    }
+}
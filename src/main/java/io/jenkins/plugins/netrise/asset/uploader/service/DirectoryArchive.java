@@ -0,0 +1,432 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Tar archive of the directory generated on the fly while it is read, without a temporary file.
+ * The archive size is computed up front from the file sizes, so the upload has a known length.
+ * The beginning of the next files is read ahead in parallel while the current file is streamed,
+ * it helps with the trees of many small files. The read-ahead is a few heap arrays (4 files of 1 MB at most by default),
+ * it doesn't use the {@link io.jenkins.plugins.netrise.asset.uploader.api.BufferPool}.
+ * <p>
+ * GNU tar format is used: long names are stored in the {@code ././@LongLink} entries
+ * and the sizes over 8 GB are stored in base-256.
+ * */
+public class DirectoryArchive {
+
+    public static final String EXTENSION = ".tar";
+
+    public static final int DEFAULT_READAHEAD_FILES = 4;
+    public static final int DEFAULT_READAHEAD_SIZE = 1024 * 1024; // 1 MB
+
+    // time the idle readahead thread is kept, ms
+    private static final long READAHEAD_KEEP_ALIVE = 5000;
+
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final String LONG_LINK = "././@LongLink";
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private static final char TYPE_FILE = '0';
+    private static final char TYPE_SYMLINK = '2';
+    private static final char TYPE_DIRECTORY = '5';
+    private static final char TYPE_LONG_NAME = 'L';
+    private static final char TYPE_LONG_LINK = 'K';
+
+    private final List<Entry> entries;
+    private final long size;
+    private final int readaheadFiles;
+    private final int readaheadSize;
+
+    public DirectoryArchive(Path dir) throws IOException {
+        this(dir, DEFAULT_READAHEAD_FILES, DEFAULT_READAHEAD_SIZE);
+    }
+
+    /**
+     * Scan the directory. Only the file attributes are read, not the content.
+     *
+     * @param dir The directory to archive
+     * @param readaheadFiles Number of the next files read ahead in parallel
+     * @param readaheadSize Max number of bytes read ahead for every file
+     * */
+    public DirectoryArchive(Path dir, int readaheadFiles, int readaheadSize) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("Not a directory: " + dir);
+        }
+        this.readaheadFiles = Math.max(0, readaheadFiles);
+        this.readaheadSize = Math.max(0, readaheadSize);
+        this.entries = scan(dir);
+        long total = 2 * BLOCK; // end of archive
+        for (Entry entry : entries) {
+            total += entry.archiveSize();
+        }
+        this.size = total;
+    }
+
+    private static List<Entry> scan(Path dir) throws IOException {
+        Path base = dir.toAbsolutePath().normalize();
+        String root = base.getFileName() != null ? base.getFileName().toString() : "root";
+        List<Entry> result = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(base)) {
+            for (Path path : paths.sorted().toList()) {
+                String name = base.equals(path)
+                        ? root
+                        : root + "/" + base.relativize(path).toString().replace('\\', '/');
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                long mtime = attrs.lastModifiedTime().toMillis() / 1000;
+                if (attrs.isSymbolicLink()) {
+                    result.add(new Entry(path, name, TYPE_SYMLINK, 0, 0777, mtime, Files.readSymbolicLink(path).toString()));
+                } else if (attrs.isDirectory()) {
+                    result.add(new Entry(path, name + "/", TYPE_DIRECTORY, 0, 0755, mtime, null));
+                } else if (attrs.isRegularFile()) {
+                    int mode = Files.isExecutable(path) ? 0755 : 0644;
+                    result.add(new Entry(path, name, TYPE_FILE, attrs.size(), mode, mtime, null));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the exact size of the archive in bytes
+     * */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Open the archive stream. Every call creates an independent stream (e.g. for upload retries).
+     * */
+    public InputStream open() {
+        return new ArchiveStream();
+    }
+
+    private static long padded(long length) {
+        return (length + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Archive entry with the attributes obtained during the scan
+     * */
+    private record Entry(Path path, String name, char type, long size, int mode, long mtime, String link) {
+
+        long archiveSize() {
+            long total = BLOCK + padded(size);
+            if (utf8(name).length > NAME_LENGTH) {
+                total += BLOCK + padded(utf8(name).length + 1);
+            }
+            if (link != null && utf8(link).length > NAME_LENGTH) {
+                total += BLOCK + padded(utf8(link).length + 1);
+            }
+            return total;
+        }
+
+        /**
+         * Return the headers of the entry, including the long name entries
+         * */
+        byte[] headers() {
+            byte[] nameBytes = utf8(name);
+            byte[] linkBytes = link != null ? utf8(link) : new byte[0];
+            ByteBuffer buffer = ByteBuffer.allocate((int) (archiveSize() - padded(size)));
+            if (linkBytes.length > NAME_LENGTH) {
+                buffer.put(header(utf8(LONG_LINK), TYPE_LONG_LINK, linkBytes.length + 1, 0, 0, new byte[0]));
+                buffer.put(linkBytes);
+                buffer.position((int) padded(buffer.position()));
+            }
+            if (nameBytes.length > NAME_LENGTH) {
+                buffer.put(header(utf8(LONG_LINK), TYPE_LONG_NAME, nameBytes.length + 1, 0, 0, new byte[0]));
+                buffer.put(nameBytes);
+                buffer.position((int) padded(buffer.position()));
+            }
+            buffer.put(header(nameBytes, type, size, mode, mtime, linkBytes));
+            return buffer.array();
+        }
+
+        private static byte[] header(byte[] name, char type, long size, int mode, long mtime, byte[] link) {
+            byte[] header = new byte[BLOCK];
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_LENGTH));
+            octal(header, 100, 8, mode);
+            octal(header, 108, 8, 0); // uid
+            octal(header, 116, 8, 0); // gid
+            if (size > MAX_OCTAL_SIZE) {
+                // base-256: the first byte flag and the big-endian value
+                header[124] = (byte) 0x80;
+                for (int i = 0; i < 8; i++) {
+                    header[135 - i] = (byte) (size >>> (8 * i));
+                }
+            } else {
+                octal(header, 124, 12, size);
+            }
+            octal(header, 136, 12, mtime);
+            header[156] = (byte) type;
+            System.arraycopy(link, 0, header, 157, Math.min(link.length, NAME_LENGTH));
+            System.arraycopy(utf8("ustar  \0"), 0, header, 257, 8);
+
+            // checksum is calculated with the checksum field filled with spaces
+            for (int i = 148; i < 156; i++) {
+                header[i] = ' ';
+            }
+            long checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xFF;
+            }
+            octal(header, 148, 7, checksum);
+            header[155] = ' ';
+            return header;
+        }
+
+        /**
+         * Write the zero-padded octal value terminated by NUL
+         * */
+        private static void octal(byte[] header, int offset, int length, long value) {
+            String digits = Long.toOctalString(value);
+            int width = length - 1;
+            for (int i = 0; i < width; i++) {
+                int idx = digits.length() - width + i;
+                header[offset + i] = (byte) (idx >= 0 ? digits.charAt(idx) : '0');
+            }
+            header[offset + width] = 0;
+        }
+    }
+
+    /**
+     * Part of the archive stream: headers, file content or padding
+     * */
+    private interface Segment {
+        int read(byte[] b, int off, int len) throws IOException;
+
+        default void close() throws IOException {
+        }
+    }
+
+    private static class BytesSegment implements Segment {
+        private final byte[] bytes;
+        private int position;
+
+        BytesSegment(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int n = Math.min(len, bytes.length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * File content: the part read ahead first, then the rest from the file channel
+     * */
+    private static class FileSegment implements Segment {
+        private final Entry entry;
+        private final Future<byte[]> readahead;
+        private byte[] head;
+        private FileChannel channel;
+        private long position;
+
+        FileSegment(Entry entry, Future<byte[]> readahead) {
+            this.entry = entry;
+            this.readahead = readahead;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= entry.size()) {
+                return -1;
+            }
+            int max = (int) Math.min(len, entry.size() - position);
+            if (head == null) {
+                head = readahead(readahead);
+            }
+            if (position < head.length) {
+                int n = Math.min(max, head.length - (int) position);
+                System.arraycopy(head, (int) position, b, off, n);
+                position += n;
+                return n;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(entry.path(), StandardOpenOption.READ);
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, max), position);
+            if (n < 0) {
+                throw new IOException("File is changed while it is archived: " + entry.path());
+            }
+            position += n;
+            return n;
+        }
+
+        private static byte[] readahead(Future<byte[]> readahead) throws IOException {
+            if (readahead == null) {
+                return new byte[0];
+            }
+            try {
+                return readahead.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Archiving is interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (readahead != null) {
+                readahead.cancel(true);
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private class ArchiveStream extends InputStream {
+        private final ExecutorService executor;
+        private final List<Future<byte[]>> readaheads = new ArrayList<>();
+        private int index;
+        private int step;
+        private Segment segment;
+        private boolean finished;
+
+        ArchiveStream() {
+            if (readaheadFiles > 0 && readaheadSize > 0) {
+                // the idle threads end, so the stream that is never closed doesn't keep them
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(readaheadFiles, readaheadFiles,
+                        READAHEAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                            Thread thread = new Thread(r, "NetRise archive readahead");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+            } else {
+                executor = null;
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                readaheads.add(null);
+            }
+        }
+
+        /**
+         * Schedule the readahead of the files next to the current one
+         * */
+        private void readahead(int from) {
+            if (executor == null) {
+                return;
+            }
+            for (int i = from; i < entries.size() && i <= from + readaheadFiles; i++) {
+                Entry entry = entries.get(i);
+                if (entry.type() == TYPE_FILE && entry.size() > 0 && readaheads.get(i) == null) {
+                    int length = (int) Math.min(entry.size(), readaheadSize);
+                    readaheads.set(i, executor.submit(() -> read(entry.path(), length)));
+                }
+            }
+        }
+
+        private byte[] read(Path path, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("File is changed while it is archived: " + path);
+                    }
+                }
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Move to the next segment: headers, content and padding for every entry, then the end of archive
+         * */
+        private Segment next() {
+            while (index < entries.size()) {
+                Entry entry = entries.get(index);
+                int current = step++;
+                if (current == 0) {
+                    readahead(index);
+                    return new BytesSegment(entry.headers());
+                } else if (current == 1 && entry.type() == TYPE_FILE && entry.size() > 0) {
+                    Future<byte[]> readahead = readaheads.set(index, null);
+                    return new FileSegment(entry, readahead);
+                } else if (current == 2 && padded(entry.size()) > entry.size()) {
+                    return new BytesSegment(new byte[(int) (padded(entry.size()) - entry.size())]);
+                } else if (current > 2) {
+                    index++;
+                    step = 0;
+                }
+            }
+            if (!finished) {
+                finished = true;
+                if (executor != null) {
+                    // all the files are read
+                    executor.shutdown();
+                }
+                return new BytesSegment(new byte[2 * BLOCK]);
+            }
+            return null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (segment == null) {
+                    segment = next();
+                    if (segment == null) {
+                        return -1;
+                    }
+                }
+                int n = segment.read(b, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+                segment.close();
+                segment = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+            for (Future<byte[]> readahead : readaheads) {
+                if (readahead != null) {
+                    readahead.cancel(true);
+                }
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.ClientException;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+
+import java.net.URI;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Regional NetRise endpoints, each with its own upload service.
+ * The endpoints are probed periodically (latency, health) and the transfers of the uploads give their throughput.
+ * Every new upload goes to the fastest healthy endpoint, so an endpoint that fails or slows down stops
+ * getting the uploads until it recovers.
+ * */
+public class EndpointPool {
+    private static final Logger log = Logger.getLogger(EndpointPool.class);
+
+    /**
+     * The endpoint is degraded after that many failures in a row
+     * */
+    public static final int MAX_FAILURES = 2;
+
+    /**
+     * The typical upload size used to weigh the throughput against the latency
+     * */
+    public static final long REFERENCE_SIZE = 64L * 1024 * 1024;
+
+    private static final double SMOOTHING = 0.3;
+
+    private final List<Endpoint> endpoints;
+
+    /**
+     * @param endpoints The endpoints in the order of preference, the first one is used while nothing is measured
+     * */
+    public EndpointPool(List<Endpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Return the fastest healthy endpoint. If all of them are degraded, the one that failed first is retried.
+     * */
+    public Endpoint select() {
+        return endpoints.stream()
+                .filter(Endpoint::isHealthy)
+                .min(Comparator.comparingDouble(Endpoint::getScore))
+                .orElseGet(() -> endpoints.stream()
+                        .min(Comparator.comparingLong(Endpoint::getLastFailure))
+                        .orElseThrow());
+    }
+
+    /**
+     * Check the health and the latency of all the endpoints, see {@link UploadService#warmUp}
+     *
+     * @param minTokenValidity Time in milliseconds the token should stay valid
+     *
+     * @return true if some endpoint is healthy
+     * */
+    public boolean probe(long minTokenValidity) {
+        boolean healthy = false;
+        for (Endpoint endpoint : endpoints) {
+            long start = System.currentTimeMillis();
+            try {
+                endpoint.getService().warmUp(minTokenValidity);
+                endpoint.succeeded(System.currentTimeMillis() - start);
+                healthy = true;
+            } catch (RuntimeException e) {
+                endpoint.failed(e);
+                log.warn("NetRise endpoint is not available:", endpoint.getUri(), e.getMessage());
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * Record the successful upload, the transfer gives the throughput
+     *
+     * @param service The service of the endpoint
+     * @param transfer The transfer result, nullable
+     * */
+    public void uploaded(UploadService service, TransferResult transfer) {
+        Endpoint endpoint = find(service);
+        if (endpoint != null) {
+            endpoint.uploaded(transfer);
+        }
+    }
+
+    /**
+     * Record the failed upload. Only the network and API errors degrade the endpoint.
+     *
+     * @param service The service of the endpoint
+     * @param error The upload error
+     * */
+    public void failed(UploadService service, Throwable error) {
+        Endpoint endpoint = find(service);
+        if (endpoint == null) {
+            return;
+        }
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof ClientException) {
+                endpoint.failed(error);
+                if (!endpoint.isHealthy()) {
+                    log.warn("NetRise endpoint is degraded, the next uploads go to", select().getUri());
+                }
+                return;
+            }
+        }
+    }
+
+    private Endpoint find(UploadService service) {
+        return endpoints.stream().filter(e -> e.getService() == service).findFirst().orElse(null);
+    }
+
+    /**
+     * Close the services of all the endpoints
+     * */
+    public void close() {
+        endpoints.forEach(e -> e.getService().close());
+    }
+
+    /**
+     * The endpoint with its service and stats
+     * */
+    public static class Endpoint {
+        private final URI uri;
+        private final UploadService service;
+
+        private double latency = -1;
+        private double throughput = -1;
+        private int failures;
+        private long uploads;
+        private long failedUploads;
+        private long lastFailure;
+        private String lastError;
+
+        public Endpoint(URI uri, UploadService service) {
+            this.uri = uri;
+            this.service = service;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        public UploadService getService() {
+            return service;
+        }
+
+        public synchronized boolean isHealthy() {
+            return failures < MAX_FAILURES;
+        }
+
+        /**
+         * Return the smoothed probe latency in milliseconds, -1 if it is not measured
+         * */
+        public synchronized long getLatency() {
+            return Math.round(latency);
+        }
+
+        /**
+         * Return the smoothed transfer throughput in bytes per second, -1 if it is not measured
+         * */
+        public synchronized long getThroughput() {
+            return Math.round(throughput);
+        }
+
+        public synchronized long getUploads() {
+            return uploads;
+        }
+
+        public synchronized long getFailedUploads() {
+            return failedUploads;
+        }
+
+        public synchronized long getLastFailure() {
+            return lastFailure;
+        }
+
+        public synchronized String getLastError() {
+            return lastError;
+        }
+
+        /**
+         * Return the expected time of the typical upload in milliseconds: the latency and the transfer time.
+         * What is not measured yet counts as nothing, so a new endpoint gets tried.
+         * */
+        synchronized double getScore() {
+            double score = Math.max(latency, 0);
+            if (throughput > 0) {
+                score += REFERENCE_SIZE * 1000.0 / throughput;
+            }
+            return score;
+        }
+
+        synchronized void succeeded(long latencyMillis) {
+            latency = latency < 0 ? latencyMillis : SMOOTHING * latencyMillis + (1 - SMOOTHING) * latency;
+            failures = 0;
+        }
+
+        synchronized void uploaded(TransferResult transfer) {
+            uploads++;
+            failures = 0;
+            if (transfer != null && transfer.size() > 0 && transfer.durationMillis() > 0) {
+                double bytesPerSecond = transfer.getBytesPerSecond();
+                throughput = throughput < 0 ? bytesPerSecond : SMOOTHING * bytesPerSecond + (1 - SMOOTHING) * throughput;
+            }
+        }
+
+        synchronized void failed(Throwable error) {
+            failures++;
+            failedUploads++;
+            lastFailure = System.currentTimeMillis();
+            lastError = error.getMessage();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking (FastCDC with normalized chunking).
+ * The chunk boundaries depend on the content only, so an insertion or a change in the file
+ * moves the boundaries of the neighbouring chunks only and the rest of the chunks stay the same.
+ * */
+public class FastCdc {
+
+    public static final int DEFAULT_MIN_SIZE = 16 * 1024;
+    public static final int DEFAULT_AVG_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 256 * 1024;
+
+    // the fingerprint is shifted left, so the top bits depend on the last 64 bytes
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // fixed seed: the boundaries should be the same on every node and in every version
+        SplittableRandom random = new SplittableRandom(0x4E657452697365L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskS;
+    private final long maskL;
+
+    public FastCdc() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_AVG_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param minSize Min chunk size
+     * @param avgSize Expected chunk size, power of 2
+     * @param maxSize Max chunk size
+     * */
+    public FastCdc(int minSize, int avgSize, int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes: " + minSize + ", " + avgSize + ", " + maxSize);
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        // the harder mask before the expected size and the easier one after it keep the sizes close to it
+        this.maskS = -1L << (64 - Math.min(bits + 2, 63));
+        this.maskL = -1L << (64 - Math.max(bits - 2, 1));
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Split the stream into chunks. The stream is read into one heap buffer of two max chunks (512 KB by default),
+     * the cut points need the bytes as an array; it is not taken from the direct buffers
+     * of the {@link io.jenkins.plugins.netrise.asset.uploader.api.BufferPool}.
+     *
+     * @param in The stream, it is not closed
+     * @param listener Receives the chunks in order
+     * */
+    public void split(InputStream in, ChunkListener listener) throws IOException {
+        byte[] buffer = new byte[maxSize * 2];
+        ByteBuffer data = ByteBuffer.wrap(buffer);
+        int start = 0;
+        int end = 0;
+        long position = 0;
+        boolean eof = false;
+
+        while (true) {
+            if (!eof && end - start < maxSize) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                while (end < buffer.length) {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += read;
+                }
+            }
+            if (start == end) {
+                return;
+            }
+            int length = cut(data, start, end - start);
+            listener.chunk(buffer, start, length, position);
+            start += length;
+            position += length;
+        }
+    }
+
+    /**
+     * Return the length of the chunk starting at the offset of the buffer (e.g. a mapped window of the file).
+     * The available bytes should hold a max chunk unless it is the end of the file.
+     * */
+    int cut(ByteBuffer data, int offset, int available) {
+        if (available <= minSize) {
+            return available;
+        }
+        int n = Math.min(available, maxSize);
+        int normal = Math.min(n, avgSize);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data.get(offset + i) & 0xFF];
+            if ((fingerprint & maskS) == 0) {
+                return i;
+            }
+        }
+        for (; i < n; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data.get(offset + i) & 0xFF];
+            if ((fingerprint & maskL) == 0) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Receives the chunks. The buffer is reused, so the bytes should be consumed before the method returns.
+     * */
+    @FunctionalInterface
+    public interface ChunkListener {
+        void chunk(byte[] buffer, int offset, int length, long position) throws IOException;
+    }
+}
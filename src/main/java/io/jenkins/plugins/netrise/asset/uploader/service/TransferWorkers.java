@@ -0,0 +1,186 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload workers shared by all the executors of the node (one set per JVM), started by the first transfer.
+ * The transfers of the builds wait here for a worker, so the node doesn't send more files at the same time
+ * than its disk and uplink take. The large files are read one by one: they are read sequentially
+ * instead of making the disk seek between them, while the small files still pass the waiting large ones.
+ * The workers share the HTTP client of {@link io.jenkins.plugins.netrise.asset.uploader.api.TransferClient},
+ * so the connections are reused.
+ * */
+public class TransferWorkers {
+    private static final Logger log = Logger.getLogger(TransferWorkers.class);
+
+    /**
+     * Max number of the transfers of the node at the same time
+     * */
+    public static final int MAX_TRANSFERS = Integer.getInteger(TransferWorkers.class.getName() + ".maxTransfers", 4);
+
+    /**
+     * Max number of the large files sent at the same time
+     * */
+    public static final int MAX_LARGE_TRANSFERS = Integer.getInteger(TransferWorkers.class.getName() + ".maxLargeTransfers", 1);
+
+    /**
+     * The file is large from this size in bytes (256 MB by default)
+     * */
+    public static final long LARGE_SIZE = Long.getLong(TransferWorkers.class.getName() + ".largeSize", 256L * 1024 * 1024);
+
+    private static volatile TransferWorkers instance;
+
+    private final int maxTransfers;
+    private final int maxLargeTransfers;
+    private final long largeSize;
+    private final ThreadPoolExecutor executor;
+
+    private final Deque<Task<?>> waiting = new ArrayDeque<>();
+    private int running;
+    private int runningLarge;
+
+    /**
+     * @param maxTransfers Max number of the transfers at the same time
+     * @param maxLargeTransfers Max number of the large transfers at the same time
+     * @param largeSize The transfer is large from this size in bytes
+     * */
+    public TransferWorkers(int maxTransfers, int maxLargeTransfers, long largeSize) {
+        if (maxTransfers <= 0 || maxLargeTransfers <= 0) {
+            throw new IllegalArgumentException("Invalid number of transfers: " + maxTransfers + ", " + maxLargeTransfers);
+        }
+        this.maxTransfers = maxTransfers;
+        this.maxLargeTransfers = maxLargeTransfers;
+        this.largeSize = largeSize;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxTransfers, maxTransfers, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "NetRise upload worker " + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // no idle threads between the builds
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Return the workers of this JVM
+     * */
+    public static TransferWorkers get() {
+        if (instance == null) {
+            synchronized (TransferWorkers.class) {
+                if (instance == null) {
+                    instance = new TransferWorkers(MAX_TRANSFERS, MAX_LARGE_TRANSFERS, LARGE_SIZE);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Run the transfer on a worker and wait for it. If the waiting thread is interrupted (the build is aborted),
+     * the transfer is removed from the queue or its worker is interrupted.
+     *
+     * @param size Number of bytes to read and send, -1 if it is unknown
+     * @param transfer The transfer
+     *
+     * @return The transfer result
+     * */
+    public <T> T transfer(long size, Callable<T> transfer) throws IOException, InterruptedException {
+        Task<T> task = new Task<>(transfer, size >= largeSize);
+        synchronized (this) {
+            waiting.add(task);
+            if (running >= maxTransfers) {
+                log.debug("Upload is queued, transfers in progress:", running);
+            }
+            dispatch();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                waiting.remove(task);
+            }
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            } else if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException("Transfer error", cause);
+        }
+    }
+
+    /**
+     * Start the waiting transfers in the queue order while there are free workers
+     * */
+    private synchronized void dispatch() {
+        Iterator<Task<?>> it = waiting.iterator();
+        while (it.hasNext() && running < maxTransfers) {
+            Task<?> task = it.next();
+            if (task.large && runningLarge >= maxLargeTransfers) {
+                continue;
+            }
+            it.remove();
+            running++;
+            if (task.large) {
+                runningLarge++;
+            }
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished(task);
+                }
+            });
+        }
+    }
+
+    private synchronized void finished(Task<?> task) {
+        running--;
+        if (task.large) {
+            runningLarge--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Return the number of the transfers in progress
+     * */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Return the number of the transfers waiting for a worker
+     * */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private static class Task<T> extends FutureTask<T> {
+        final boolean large;
+
+        Task(Callable<T> callable, boolean large) {
+            super(callable);
+            this.large = large;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.IntStream;
+
+/**
+ * Hash large files on all the cores of the node. The file is memory-mapped in windows,
+ * the leaves (fixed-size segments, the given chunks or the content-defined chunks found in the same read) are hashed in parallel and combined into a tree digest:
+ * a leaf is the SHA-256 of its bytes, a node is {@code SHA-256(0x01 || left || right)},
+ * the last node of an odd level is promoted as is.
+ * The plain SHA-256 of the whole file can't be computed in parallel, it is computed at the same time
+ * by one more task, so it takes the time of one sequential read instead of adding to it.
+ * The windows are the page cache of the file rather than allocated memory, so they are not taken
+ * from the {@link io.jenkins.plugins.netrise.asset.uploader.api.BufferPool}.
+ * */
+public class TreeHasher {
+
+    public static final int DEFAULT_LEAF_SIZE = 1024 * 1024;
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final String SHA_256 = "SHA-256";
+    private static final byte NODE_PREFIX = 0x01;
+
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(TreeHasher::sha256);
+
+    private static volatile ForkJoinPool sharedPool;
+
+    private final int leafSize;
+    private final int windowSize;
+    private final ForkJoinPool pool;
+
+    public TreeHasher() {
+        this(DEFAULT_LEAF_SIZE, DEFAULT_WINDOW_SIZE, getSharedPool());
+    }
+
+    /**
+     * @param leafSize Size of the fixed-size leaves
+     * @param windowSize Size of the mapped windows, a window holds one leaf at least
+     * @param pool Runs the hashing tasks
+     * */
+    public TreeHasher(int leafSize, int windowSize, ForkJoinPool pool) {
+        if (leafSize <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid sizes: " + leafSize + ", " + windowSize);
+        }
+        this.leafSize = leafSize;
+        this.windowSize = windowSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Return the pool of the hashing threads, one per core
+     * */
+    private static ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            synchronized (TreeHasher.class) {
+                if (sharedPool == null) {
+                    sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("NetRise hashing " + thread.getPoolIndex());
+                        return thread;
+                    }, null, false);
+                }
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Hash the file split into fixed-size leaves
+     *
+     * @param file The file
+     * @param plain Compute the plain SHA-256 of the file too
+     * */
+    public Digest digest(Path file, boolean plain) throws IOException, InterruptedException {
+        return digest(file, (int[]) null, plain);
+    }
+
+    /**
+     * Hash the file split into the given chunks, the leaf digests are the chunk SHA-256
+     *
+     * @param file The file
+     * @param chunkLengths Lengths of the chunks in the file order, they should cover the whole file.
+     *                     Nullable, then the file is split into fixed-size leaves
+     * @param plain Compute the plain SHA-256 of the file too
+     * */
+    public Digest digest(Path file, int[] chunkLengths, boolean plain) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] offsets = chunkLengths != null ? offsets(chunkLengths, size) : offsets(size);
+            List<Window> windows = map(channel, offsets);
+
+            CompletableFuture<byte[]> whole = plain
+                    ? CompletableFuture.supplyAsync(() -> sequential(windows), pool)
+                    : CompletableFuture.completedFuture(null);
+            byte[][] leaves = new byte[offsets.length - 1][];
+            pool.submit(() -> IntStream.range(0, leaves.length).parallel()
+                    .forEach(i -> leaves[i] = leaf(windows, offsets, i))).get();
+
+            List<Integer> lengths = IntStream.range(0, leaves.length)
+                    .mapToObj(i -> (int) (offsets[i + 1] - offsets[i])).toList();
+            return digest(size, whole.get(), leaves, lengths);
+        } catch (ExecutionException e) {
+            throw error(file, e);
+        }
+    }
+
+    /**
+     * Split the file into content-defined chunks and hash them in one read of the file:
+     * the chunks found in a mapped window are hashed in parallel while the next boundaries are searched.
+     * The leaf digests are the chunk SHA-256.
+     *
+     * @param file The file
+     * @param cdc Finds the chunk boundaries
+     * @param plain Compute the plain SHA-256 of the file too
+     * */
+    public Digest digest(Path file, FastCdc cdc, boolean plain) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // a window holds a max chunk at least, so the cut points don't depend on the windows
+            long windowLength = Math.max(windowSize, cdc.getMaxSize());
+            List<CompletableFuture<byte[]>> leaves = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            CompletableFuture<MessageDigest> whole = CompletableFuture.completedFuture(plain ? sha256() : null);
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(windowLength, size - position);
+                if (channel.size() < position + length) {
+                    throw new IOException("The file is changed while it is hashed: " + file);
+                }
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int offset = 0;
+                // the chunk that may end beyond the window is cut in the next one
+                while (offset < length && (last || length - offset >= cdc.getMaxSize())) {
+                    int chunkLength = cdc.cut(window, offset, length - offset);
+                    ByteBuffer chunk = window.slice(offset, chunkLength);
+                    leaves.add(CompletableFuture.supplyAsync(() -> hash(chunk), pool));
+                    lengths.add(chunkLength);
+                    offset += chunkLength;
+                }
+                if (plain) {
+                    ByteBuffer consumed = window.slice(0, offset);
+                    whole = whole.thenApplyAsync(digest -> {
+                        digest.update(consumed);
+                        return digest;
+                    }, pool);
+                }
+                position += offset;
+            }
+
+            byte[][] digests = new byte[leaves.size()][];
+            for (int i = 0; i < digests.length; i++) {
+                digests[i] = leaves.get(i).get();
+            }
+            MessageDigest digest = whole.get();
+            return digest(size, digest != null ? digest.digest() : null, digests, lengths);
+        } catch (ExecutionException e) {
+            throw error(file, e);
+        }
+    }
+
+    private static Digest digest(long size, byte[] sha256, byte[][] leaves, List<Integer> lengths) {
+        List<String> leafDigests = Arrays.stream(leaves).map(TreeHasher::hex).toList();
+        return new Digest(size, sha256 != null ? hex(sha256) : null, hex(root(leaves)), leafDigests, lengths);
+    }
+
+    /**
+     * Rethrow the runtime error of the hashing task or return the I/O one
+     * */
+    private static IOException error(Path file, ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+            throw cause;
+        }
+        return new IOException("File hashing error: " + file, e.getCause());
+    }
+
+    private long[] offsets(long size) {
+        int count = (int) Math.max(1, (size + leafSize - 1) / leafSize);
+        long[] offsets = new long[count + 1];
+        for (int i = 1; i <= count; i++) {
+            offsets[i] = Math.min(size, (long) i * leafSize);
+        }
+        return offsets;
+    }
+
+    private static long[] offsets(int[] lengths, long size) {
+        long[] offsets = new long[lengths.length + 1];
+        for (int i = 0; i < lengths.length; i++) {
+            offsets[i + 1] = offsets[i] + lengths[i];
+        }
+        if (offsets[lengths.length] != size) {
+            throw new IllegalArgumentException("The chunks don't cover the file: " + offsets[lengths.length] + " of " + size);
+        }
+        return offsets;
+    }
+
+    /**
+     * Map the file in windows holding whole leaves
+     * */
+    private List<Window> map(FileChannel channel, long[] offsets) throws IOException {
+        List<Window> windows = new ArrayList<>();
+        int first = 0;
+        while (first < offsets.length - 1) {
+            int last = first + 1;
+            while (last < offsets.length - 1 && offsets[last + 1] - offsets[first] <= windowSize) {
+                last++;
+            }
+            long position = offsets[first];
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, offsets[last] - position);
+            windows.add(new Window(first, position, buffer));
+            first = last;
+        }
+        return windows;
+    }
+
+    private static byte[] leaf(List<Window> windows, long[] offsets, int index) {
+        Window window = find(windows, index);
+        int offset = (int) (offsets[index] - window.position());
+        int length = (int) (offsets[index + 1] - offsets[index]);
+        return hash(window.buffer().slice(offset, length));
+    }
+
+    private static byte[] hash(ByteBuffer data) {
+        MessageDigest digest = digests.get();
+        digest.update(data);
+        return digest.digest();
+    }
+
+    private static Window find(List<Window> windows, int leaf) {
+        int low = 0;
+        int high = windows.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (windows.get(middle).firstLeaf() <= leaf) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return windows.get(low);
+    }
+
+    private static byte[] sequential(List<Window> windows) {
+        MessageDigest digest = sha256();
+        for (Window window : windows) {
+            digest.update(window.buffer().duplicate());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Combine the leaf digests level by level
+     * */
+    static byte[] root(byte[][] leaves) {
+        if (leaves.length == 0) {
+            return sha256().digest();
+        }
+        byte[][] level = leaves;
+        MessageDigest digest = sha256();
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < level.length / 2; i++) {
+                digest.update(NODE_PREFIX);
+                digest.update(level[2 * i]);
+                digest.update(level[2 * i + 1]);
+                next[i] = digest.digest();
+            }
+            if (level.length % 2 == 1) {
+                next[next.length - 1] = level[level.length - 1];
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance(SHA_256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    private record Window(int firstLeaf, long position, MappedByteBuffer buffer) {
+    }
+
+    /**
+     * @param size The file size
+     * @param sha256 Plain SHA-256 of the file, null if it is not requested
+     * @param treeSha256 Root of the leaf digest tree
+     * @param leaves SHA-256 of the leaves in the file order
+     * @param lengths Lengths of the leaves in the file order
+     * */
+    public record Digest(long size, String sha256, String treeSha256, List<String> leaves, List<Integer> lengths) {
+    }
+}
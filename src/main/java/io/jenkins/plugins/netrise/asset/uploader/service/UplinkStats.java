@@ -0,0 +1,98 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Transfer counters of the nodes the files are sent from, so a slow agent uplink is visible on the configuration page.
+ * Kept in memory on the controller from the transfer results returned by the nodes.
+ * */
+public class UplinkStats {
+
+    private final Map<String, Node> nodes = new TreeMap<>();
+
+    /**
+     * Record the transfer of the node, the failed and empty transfers are not counted
+     *
+     * @param node The node name
+     * @param transfer The transfer result, nullable
+     * */
+    public void record(String node, TransferResult transfer) {
+        if (transfer == null || !transfer.isSuccessful() || transfer.size() <= 0) {
+            return;
+        }
+        Node stats;
+        synchronized (nodes) {
+            stats = nodes.computeIfAbsent(node, Node::new);
+        }
+        stats.transferred(transfer);
+    }
+
+    /**
+     * Return the nodes by name
+     * */
+    public List<Node> getNodes() {
+        synchronized (nodes) {
+            return new ArrayList<>(nodes.values());
+        }
+    }
+
+    public static class Node {
+        private final String name;
+
+        private long uploads;
+        private long bytes;
+        private long millis;
+        private long lastThroughput;
+        private long minThroughput = -1;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized long getUploads() {
+            return uploads;
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Return the throughput of all the transfers in bytes per second
+         * */
+        public synchronized long getThroughput() {
+            return millis > 0 ? bytes * 1000 / millis : bytes;
+        }
+
+        /**
+         * Return the throughput of the last transfer in bytes per second
+         * */
+        public synchronized long getLastThroughput() {
+            return lastThroughput;
+        }
+
+        /**
+         * Return the throughput of the slowest transfer in bytes per second, -1 if there are no transfers
+         * */
+        public synchronized long getMinThroughput() {
+            return minThroughput;
+        }
+
+        synchronized void transferred(TransferResult transfer) {
+            uploads++;
+            bytes += transfer.size();
+            millis += transfer.durationMillis();
+            lastThroughput = transfer.getBytesPerSecond();
+            minThroughput = minThroughput < 0 ? lastThroughput : Math.min(minThroughput, lastThroughput);
+        }
+    }
+}
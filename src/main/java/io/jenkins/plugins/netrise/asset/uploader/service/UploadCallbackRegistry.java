@@ -0,0 +1,73 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploads waiting for the processing callback, by upload ID.
+ * The callback may come before the upload is registered (e.g. the file is small and processed at once),
+ * so the early result is kept for a while and picked up by the registration.
+ * */
+public class UploadCallbackRegistry {
+
+    public static final long EARLY_RESULT_TTL = 10 * 60 * 1000; // 10 minutes
+
+    private static final UploadCallbackRegistry instance = new UploadCallbackRegistry();
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Return the registry of the JVM shared by the upload services and the callback endpoint
+     * */
+    public static UploadCallbackRegistry get() {
+        return instance;
+    }
+
+    /**
+     * Register the upload waiting for the callback. The caller should {@link #unregister(String)} it when done.
+     *
+     * @param uploadId Upload ID
+     *
+     * @return Future completed with the asset ID when the callback comes
+     * */
+    public CompletableFuture<String> register(String uploadId) {
+        Pending upload = pending.computeIfAbsent(uploadId, id -> new Pending());
+        upload.registered = true;
+        return upload.future;
+    }
+
+    public void unregister(String uploadId) {
+        pending.remove(uploadId);
+    }
+
+    /**
+     * Complete the upload with the asset ID
+     *
+     * @param uploadId Upload ID
+     * @param assetId Asset ID
+     *
+     * @return true if the upload is waiting for the callback, false if the result is kept for the later registration
+     * */
+    public boolean complete(String uploadId, String assetId) {
+        removeExpired();
+        Pending upload = pending.computeIfAbsent(uploadId, id -> new Pending());
+        upload.future.complete(assetId);
+        return upload.registered;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private void removeExpired() {
+        long threshold = System.currentTimeMillis() - EARLY_RESULT_TTL;
+        pending.values().removeIf(p -> !p.registered && p.created < threshold);
+    }
+
+    private static class Pending {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final long created = System.currentTimeMillis();
+        volatile boolean registered;
+    }
+}
@@ -0,0 +1,282 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Disk-backed queue of the files waiting to be uploaded.
+ * Every entry is a directory with the {@code payload} file and the {@code entry.json} descriptor.
+ * The payload name is fixed, so any artifact name is safe; the original name is kept in the descriptor.
+ * The descriptor is written when the file is completely stored, so a directory without it
+ * is an interrupted enqueue and is removed by {@link #cleanup(long)}.
+ * The entries that can't be uploaded are moved to the {@code failed} directory, which doesn't count toward the quota
+ * and is trimmed by {@link #expireFailed(long, int)}.
+ * */
+public class UploadOutbox {
+    private static final Logger log = Logger.getLogger(UploadOutbox.class);
+
+    public static final String ENTRY_FILE = "entry.json";
+    public static final String PAYLOAD_FILE = "payload";
+    public static final String FAILED_DIR = "failed";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // the space reserved by the entries being stored, by entry directory
+    private static final Map<Path, Long> reserved = new HashMap<>();
+
+    private final Path root;
+
+    public UploadOutbox(Path root) {
+        this.root = root;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Reserve the space for the file and create the entry directory.
+     * The space is reserved until the entry is saved or released, so the concurrent builds can't exceed the quota.
+     *
+     * @param id Entry ID
+     * @param size The file size in bytes
+     * @param quota Max size of the queued files in bytes
+     *
+     * @return The path where the file should be stored or null if the quota is exceeded
+     * */
+    public Path reserve(String id, long size, long quota) throws IOException {
+        synchronized (reserved) {
+            if (size() + size > quota) {
+                return null;
+            }
+            Path dir = Files.createDirectories(root.resolve(id));
+            reserved.put(dir, size);
+            return dir.resolve(PAYLOAD_FILE);
+        }
+    }
+
+    /**
+     * Release the reserved space and remove the entry that couldn't be stored
+     * */
+    public void release(String id) throws IOException {
+        Path dir = root.resolve(id);
+        synchronized (reserved) {
+            reserved.remove(dir);
+        }
+        delete(dir);
+    }
+
+    /**
+     * Write the entry descriptor. It makes the entry visible for {@link #list()}.
+     * */
+    public void save(Entry entry) throws IOException {
+        Path dir = root.resolve(entry.id());
+        Path tmp = dir.resolve(ENTRY_FILE + ".tmp");
+        mapper.writeValue(tmp.toFile(), entry);
+        Files.move(tmp, dir.resolve(ENTRY_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (reserved) {
+            reserved.remove(dir);
+        }
+    }
+
+    /**
+     * Return the stored file of the entry
+     * */
+    public Path getFile(Entry entry) {
+        return root.resolve(entry.id()).resolve(PAYLOAD_FILE);
+    }
+
+    /**
+     * Return all the entries waiting for the upload ordered by creation time
+     * */
+    public List<Entry> list() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                Path descriptor = dir.resolve(ENTRY_FILE);
+                if (!FAILED_DIR.equals(dir.getFileName().toString()) && Files.isRegularFile(descriptor)) {
+                    try {
+                        entries.add(mapper.readValue(descriptor.toFile(), Entry.class));
+                    } catch (IOException e) {
+                        log.warn("Couldn't read the outbox entry", dir, e.getLocalizedMessage());
+                    }
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::created));
+        return entries;
+    }
+
+    /**
+     * Remove the uploaded entry
+     * */
+    public void remove(Entry entry) throws IOException {
+        delete(root.resolve(entry.id()));
+    }
+
+    /**
+     * Move the entry that can't be uploaded out of the queue
+     * */
+    public void fail(Entry entry) throws IOException {
+        Path failed = Files.createDirectories(root.resolve(FAILED_DIR));
+        Files.move(root.resolve(entry.id()), failed.resolve(entry.id()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Return the size of the queued files in bytes, the space reserved for the files being stored is included
+     * and the failed entries are not
+     * */
+    public long size() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        long size = 0;
+        synchronized (reserved) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    if (!FAILED_DIR.equals(dir.getFileName().toString())) {
+                        Long reservedSize = reserved.get(dir);
+                        size += reservedSize != null ? reservedSize : sizeOf(dir);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> {
+                try {
+                    return Files.size(f);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (NoSuchFileException e) {
+            // removed by the drain
+            return 0;
+        }
+    }
+
+    /**
+     * Remove the entries without descriptor (interrupted enqueue) older than the provided age
+     *
+     * @param maxAge Age in milliseconds
+     * */
+    public void cleanup(long maxAge) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long threshold = System.currentTimeMillis() - maxAge;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (!FAILED_DIR.equals(dir.getFileName().toString()) && !Files.exists(dir.resolve(ENTRY_FILE))
+                        && !isReserved(dir) && Files.getLastModifiedTime(dir).toMillis() < threshold) {
+                    log.info("Remove incomplete outbox entry", dir);
+                    delete(dir);
+                }
+            }
+        }
+    }
+
+    private static boolean isReserved(Path dir) {
+        synchronized (reserved) {
+            return reserved.containsKey(dir);
+        }
+    }
+
+    /**
+     * Remove the failed entries older than the provided age and the oldest ones over the max number
+     *
+     * @param maxAge Age in milliseconds
+     * @param maxEntries Max number of the failed entries to keep
+     * */
+    public void expireFailed(long maxAge, int maxEntries) throws IOException {
+        Path failed = root.resolve(FAILED_DIR);
+        if (!Files.isDirectory(failed)) {
+            return;
+        }
+        Map<Path, Long> failedTime = new HashMap<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(failed, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                // the descriptor is saved right before the entry is moved
+                Path descriptor = dir.resolve(ENTRY_FILE);
+                failedTime.put(dir, Files.getLastModifiedTime(Files.exists(descriptor) ? descriptor : dir).toMillis());
+            }
+        }
+        List<Path> dirs = new ArrayList<>(failedTime.keySet());
+        // the newest first
+        dirs.sort(Comparator.comparing(failedTime::get, Comparator.reverseOrder()));
+        long threshold = System.currentTimeMillis() - maxAge;
+        for (int i = 0; i < dirs.size(); i++) {
+            Path dir = dirs.get(i);
+            if (i >= maxEntries || failedTime.get(dir) < threshold) {
+                log.info("Remove failed outbox entry", dir);
+                delete(dir);
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> {
+                try {
+                    Files.delete(f);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Queued upload
+     *
+     * @param id Entry ID
+     * @param runId Externalizable ID of the build that queued the file
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param fingerprint MD5 of the file if it is fingerprinted by Jenkins
+     * @param attempts Number of the failed upload attempts
+     * @param nextAttempt Time of the next upload attempt
+     * @param lastError The last upload error
+     * @param created Time when the file is queued
+     * */
+    public record Entry(String id, String runId, String fileName, SubmitAssetInput input, String fingerprint,
+                        int attempts, long nextAttempt, String lastError, long created) {
+
+        public static Entry create(String id, String runId, String fileName, SubmitAssetInput input, String fingerprint) {
+            long now = System.currentTimeMillis();
+            return new Entry(id, runId, fileName, input, fingerprint, 0, now, null, now);
+        }
+
+        /**
+         * Return the entry with one more failed attempt and the next attempt time
+         * */
+        public Entry failed(String error, long nextAttempt) {
+            return new Entry(id, runId, fileName, input, fingerprint, attempts + 1, nextAttempt, error, created);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetResponse;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Upload several files with the submit, transfer and status check stages running at the same time.
+ * The files are submitted ahead of the transfer, the transfers go one by one to keep the uplink busy
+ * and the status of the transferred files is checked while the next files are sent.
+ * The stages are connected by bounded queues, so the submit stage doesn't run too far ahead
+ * (the upload urls are time-limited) and the transfer stage waits when the status checks fall behind.
+ * <p>
+ * A failure of one file doesn't stop the others, it is returned in the file {@link Result}.
+ * An unexpected failure of a stage (e.g. an {@link Error}) stops the pipeline and is thrown from {@link #upload(List)}.
+ * */
+public class UploadPipeline {
+    private static final Logger log = Logger.getLogger(UploadPipeline.class);
+
+    public static final int DEFAULT_SUBMIT_AHEAD = 2;
+    public static final int DEFAULT_POLL_CONCURRENCY = 4;
+
+    private final UploadService service;
+    private final int submitAhead;
+    private final int pollConcurrency;
+    private final Set<Long> threadIds = ConcurrentHashMap.newKeySet();
+
+    public UploadPipeline(UploadService service) {
+        this(service, DEFAULT_SUBMIT_AHEAD, DEFAULT_POLL_CONCURRENCY);
+    }
+
+    /**
+     * @param service The upload service
+     * @param submitAhead Number of the files submitted before their transfer starts
+     * @param pollConcurrency Number of the transferred files which status is checked at the same time
+     * */
+    public UploadPipeline(UploadService service, int submitAhead, int pollConcurrency) {
+        if (submitAhead < 1 || pollConcurrency < 1) {
+            throw new IllegalArgumentException("Pipeline queues should have positive capacity");
+        }
+        this.service = service;
+        this.submitAhead = submitAhead;
+        this.pollConcurrency = pollConcurrency;
+    }
+
+    /**
+     * Return true if the thread belongs to the running pipeline or runs its transfer (e.g. to route its log records)
+     * */
+    public boolean isPipelineThread(long threadId) {
+        return threadIds.contains(UploadService.getOwnerThreadId(threadId));
+    }
+
+    /**
+     * Upload the files. Blocks until all the files are processed.
+     *
+     * @param jobs The files to upload
+     *
+     * @return The results in the order of the jobs
+     * */
+    public List<Result> upload(List<Job> jobs) throws InterruptedException {
+        return upload(jobs, Deadline::none);
+    }
+
+    /**
+     * Upload the files, each of them within its deadline. Blocks until all the files are processed.
+     *
+     * @param jobs The files to upload
+     * @param deadlines Creates the deadline of the file when its upload starts
+     *
+     * @return The results in the order of the jobs
+     * */
+    public List<Result> upload(List<Job> jobs, Supplier<Deadline> deadlines) throws InterruptedException {
+        Result[] results = new Result[jobs.size()];
+        BlockingQueue<Item> submitted = new ArrayBlockingQueue<>(submitAhead);
+        BlockingQueue<Item> transferred = new ArrayBlockingQueue<>(pollConcurrency);
+
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        threads.add(start("submit", threads, failure, () -> {
+            try {
+                for (int i = 0; i < jobs.size(); i++) {
+                    Job job = jobs.get(i);
+                    Deadline deadline = deadlines.get();
+                    try {
+                        submitted.put(new Item(i, service.submit(job.fileName(), job.input(), deadline), null, deadline));
+                    } catch (RuntimeException e) {
+                        log.error("Couldn't submit the file", job.fileName(), e.getMessage());
+                        results[i] = new Result(job, null, null, e);
+                    }
+                }
+            } finally {
+                end(submitted, 1, failure);
+            }
+        }));
+        threads.add(start("transfer", threads, failure, () -> {
+            try {
+                for (Item item = submitted.take(); item != Item.END; item = submitted.take()) {
+                    Job job = jobs.get(item.index());
+                    try {
+                        log.debug("Obtained uploadId:", item.submit().uploadId());
+                        TransferResult result = service.transfer(job.fileName(),
+                                URI.create(item.submit().uploadUrl()), job.transfer(), item.deadline());
+                        transferred.put(new Item(item.index(), item.submit(), result, item.deadline()));
+                    } catch (RuntimeException e) {
+                        log.error("Couldn't transfer the file", job.fileName(), e.getMessage());
+                        results[item.index()] = new Result(job, null, null, e);
+                    }
+                }
+            } finally {
+                end(transferred, pollConcurrency, failure);
+            }
+        }));
+        for (int p = 0; p < pollConcurrency; p++) {
+            threads.add(start("status " + p, threads, failure, () -> {
+                for (Item item = transferred.take(); item != Item.END; item = transferred.take()) {
+                    Job job = jobs.get(item.index());
+                    try {
+                        results[item.index()] = new Result(job, service.waitForAsset(item.submit().uploadId(), item.deadline()),
+                                item.transfer(), null);
+                    } catch (RuntimeException e) {
+                        log.error("Couldn't check the upload status", job.fileName(), e.getMessage());
+                        results[item.index()] = new Result(job, null, item.transfer(), e);
+                    }
+                }
+            }));
+        }
+        if (failure.get() != null) {
+            // a stage failed before all the stages were started
+            threads.forEach(Thread::interrupt);
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            threads.forEach(Thread::interrupt);
+            throw e;
+        } finally {
+            threads.forEach(t -> threadIds.remove(t.getId()));
+        }
+        if (failure.get() instanceof Error error) {
+            throw error;
+        } else if (failure.get() instanceof RuntimeException error) {
+            throw error;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new Result(jobs.get(i), null, null, new UploadException("File upload is interrupted"));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Pass the end of the items to the next stage, unless the pipeline is stopped and nobody takes them
+     * */
+    private static void end(BlockingQueue<Item> queue, int count, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            while (!queue.offer(Item.END, 100, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the stage thread. The unexpected failure of the stage stops the others,
+     * so none of them waits for the queue the failed one won't fill.
+     * */
+    private Thread start(String stage, List<Thread> threads, AtomicReference<Throwable> failure, Stage body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                log.warn("Upload pipeline is interrupted:", stage);
+            } catch (RuntimeException | Error e) {
+                log.error("Upload pipeline stage failed:", stage, e);
+                if (failure.compareAndSet(null, e)) {
+                    threads.forEach(Thread::interrupt);
+                }
+            }
+        }, "NetRise upload pipeline " + stage);
+        thread.setDaemon(true);
+        threadIds.add(thread.getId());
+        thread.start();
+        return thread;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    private record Item(int index, SubmitAssetResponse submit, TransferResult transfer, Deadline deadline) {
+        static final Item END = new Item(-1, null, null, null);
+    }
+
+    /**
+     * File to upload
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param transfer Sends the file to the upload url
+     * */
+    public record Job(String fileName, SubmitAssetInput input, UploadService.Transfer transfer) {
+    }
+
+    /**
+     * Upload result of the file
+     *
+     * @param job The uploaded file
+     * @param assetId Asset ID, null if the upload is failed
+     * @param transfer The successful transfer, null if the file isn't transferred
+     * @param error The upload error, null if the upload is successful
+     * */
+    public record Result(Job job, String assetId, TransferResult transfer, RuntimeException error) {
+
+        public boolean isSuccessful() {
+            return error == null && assetId != null && !assetId.isBlank();
+        }
+    }
+}
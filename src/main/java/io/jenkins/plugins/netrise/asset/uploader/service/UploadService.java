@@ -1,13 +1,32 @@
 package io.jenkins.plugins.netrise.asset.uploader.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.jenkins.plugins.netrise.asset.uploader.api.Client;
+import io.jenkins.plugins.netrise.asset.uploader.api.LatencyTracker;
 import io.jenkins.plugins.netrise.asset.uploader.api.ProxyClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.StallPolicy;
+import io.jenkins.plugins.netrise.asset.uploader.api.SubscriptionClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferClient;
+import io.jenkins.plugins.netrise.asset.uploader.api.Timeouts;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
 import io.jenkins.plugins.netrise.asset.uploader.log.Logger;
 import io.jenkins.plugins.netrise.asset.uploader.model.*;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -20,9 +39,28 @@ public class UploadService {
     public static final int UPLOAD_RETRY_NUMBER = 3;
     public static final int UPLOAD_STATUS_CHECK_TIMEOUT = 5 * 1000; // 5 seconds
     public static final int UPLOAD_CHECK_STATUS_MAX_NUMBER = 10;
+    public static final int UPLOAD_STATUS_SLOW_CHECK_TIMEOUT = 30 * 1000; // 30 seconds, the callback is expected
+
+    // the transfer with the deadline runs on its own thread, so it is cancelled without interrupting the caller
+    private static final ExecutorService transferExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "NetRise upload transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // transfer thread ID -> ID of the thread waiting for the transfer
+    private static final Map<Long, Long> transferOwners = new ConcurrentHashMap<>();
 
     private final Client client;
+    private volatile TransferClient transferClient = new TransferClient();
     private final URI uri;
+    private final LatencyTracker statusLatencies = new LatencyTracker();
+    private volatile Timeouts timeouts = Timeouts.DEFAULT;
+    private volatile StallPolicy stallPolicy = StallPolicy.DEFAULT;
+    private volatile boolean hedgedStatus;
+    private volatile UploadCallbackRegistry callbacks;
+    private volatile boolean webhooks;
+    private volatile long callbackTimeout;
+    private volatile SubscriptionClient subscriptions;
 
     /**
      * Configure the service and underlying API Client
@@ -47,45 +85,353 @@ public class UploadService {
      * @return Asset ID if upload is successful
      * */
     public String upload(Path file, SubmitAssetInput input) {
+        return upload(file.getFileName().toString(), file, input);
+    }
+
+    /**
+     * Upload asset to the API with metadata
+     *
+     * @param fileName The file name
+     * @param file The path to the file, its name isn't used
+     * @param input Asset metadata
+     *
+     * @return Asset ID if upload is successful
+     * */
+    public String upload(String fileName, Path file, SubmitAssetInput input) {
+        return upload(fileName, input, uploadUri -> uploadFile(uploadUri, file));
+    }
+
+    /**
+     * Upload asset to the API with metadata.
+     * The API calls are made by this service while the file bytes are sent by the provided transfer
+     * (e.g. on the agent where the file is located).
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param transfer Sends the file to the upload url
+     *
+     * @return Asset ID if upload is successful
+     * */
+    public String upload(String fileName, SubmitAssetInput input, Transfer transfer) {
+        return upload(fileName, input, transfer, Deadline.none());
+    }
+
+    /**
+     * Upload asset to the API with metadata within the deadline.
+     * The API calls are made by this service while the file bytes are sent by the provided transfer
+     * (e.g. on the agent where the file is located).
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param transfer Sends the file to the upload url
+     * @param deadline Overall deadline of the upload, the transfer is cancelled when it is exceeded
+     *
+     * @return Asset ID if upload is successful
+     * */
+    public String upload(String fileName, SubmitAssetInput input, Transfer transfer, Deadline deadline) {
         log.debug("Start file uploading...");
-        QueryResponse<SubmitAssetWrapper<SubmitAssetResponse>> response = client.post(uri,
+        SubmitAssetResponse submitAssetResponse = submit(fileName, input, deadline);
+
+        log.debug("Obtained uploadId:", submitAssetResponse.uploadId());
+        transfer(fileName, URI.create(submitAssetResponse.uploadUrl()), transfer, deadline);
+
+        return waitForAsset(submitAssetResponse.uploadId(), deadline);
+    }
+
+    /**
+     * Send the file to the upload url obtained by {@link #submit(String, SubmitAssetInput)}.
+     * The failed transfer is retried {@link #UPLOAD_RETRY_NUMBER} times.
+     *
+     * @param fileName The file name
+     * @param uploadUri The upload url
+     * @param transfer Sends the file to the upload url
+     *
+     * @return The successful transfer result
+     * */
+    public TransferResult transfer(String fileName, URI uploadUri, Transfer transfer) {
+        return transfer(fileName, uploadUri, transfer, Deadline.none());
+    }
+
+    /**
+     * Send the file to the upload url within the deadline, the transfer is cancelled when it is exceeded
+     *
+     * @param fileName The file name
+     * @param uploadUri The upload url
+     * @param transfer Sends the file to the upload url
+     * @param deadline Overall deadline of the upload
+     *
+     * @return The successful transfer result
+     * */
+    public TransferResult transfer(String fileName, URI uploadUri, Transfer transfer, Deadline deadline) {
+        TransferResult result = transfer(uploadUri, transfer, deadline);
+
+        int uploadRetry = 0;
+        while (!result.isSuccessful() && uploadRetry++ < UPLOAD_RETRY_NUMBER) {
+            result = transfer(uploadUri, transfer, deadline);
+        }
+
+        if (!result.isSuccessful()) {
+            log.error("Couldn't upload the file to the server", fileName, ". Status:", result.statusCode());
+            throw new UploadException("Couldn't upload the file to the server");
+        }
+        log.debug("The file is transferred:", result.size(), "bytes in", result.durationMillis(), "ms");
+        return result;
+    }
+
+    /**
+     * Upload asset by reference: NetRise downloads the file from the provided url,
+     * so no file bytes pass through Jenkins.
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param downloadUrl Time-limited url to download the file
+     *
+     * @return Asset ID if upload is successful
+     * */
+    public String upload(String fileName, SubmitAssetInput input, URI downloadUrl) {
+        return upload(fileName, input, downloadUrl, Deadline.none());
+    }
+
+    /**
+     * Upload asset by reference within the deadline
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param downloadUrl Time-limited url to download the file
+     * @param deadline Overall deadline of the upload
+     *
+     * @return Asset ID if upload is successful
+     * */
+    public String upload(String fileName, SubmitAssetInput input, URI downloadUrl, Deadline deadline) {
+        log.debug("Submit file by reference...");
+        QueryResponse<SubmitAssetUrlWrapper<SubmitAssetResponse>> response = client.postQuery(uri,
+                new Query<>(Queries.SUBMIT_ASSET_URL_QUERY, new SubmitAssetUrlVariables<>(
+                        input, fileName, downloadUrl.toString())), new TypeReference<>() {},
+                deadline.timeout("submit", timeouts.graphql()));
+
+        if (response.data() == null || response.data().getData() == null) {
+            throw new UploadException("Couldn't submit the file by reference" + errorOf(response));
+        }
+
+        return waitForAsset(response.data().getData().uploadId(), deadline);
+    }
+
+    /**
+     * Submit the asset metadata and obtain the upload url
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     *
+     * @return Upload ID and upload url
+     * */
+    public SubmitAssetResponse submit(String fileName, SubmitAssetInput input) {
+        return submit(fileName, input, Deadline.none());
+    }
+
+    /**
+     * Submit the asset metadata within the deadline
+     *
+     * @param fileName The file name
+     * @param input Asset metadata
+     * @param deadline Overall deadline of the upload
+     *
+     * @return Upload ID and upload url
+     * */
+    public SubmitAssetResponse submit(String fileName, SubmitAssetInput input, Deadline deadline) {
+        QueryResponse<SubmitAssetWrapper<SubmitAssetResponse>> response = client.postQuery(uri,
                 new Query<>(Queries.SUBMIT_ASSET_QUERY, new SubmitAssetVariables<>(
-                        input, file.getFileName().toString()))).asJson(new TypeReference<>() {});
+                        input, fileName)), new TypeReference<>() {},
+                deadline.timeout("submit", timeouts.graphql()));
 
         if (response.data() == null || response.data().getData() == null) {
-            String error = response.errors() != null
-                    ? response.errors().stream().map(QueryError::message).collect(Collectors.joining(", "))
-                    : null;
-            throw new UploadException("Couldn't upload the file to the server" + (error != null ? ": " + error : "."));
+            throw new UploadException("Couldn't upload the file to the server" + errorOf(response));
         }
 
-        SubmitAssetResponse submitAssetResponse = response.data().getData();
+        return response.data().getData();
+    }
 
-        log.debug("Obtained uploadId / uploadUrl:", submitAssetResponse.uploadId(), "/", submitAssetResponse.uploadUrl());
-        URI uploadUri = URI.create(submitAssetResponse.uploadUrl());
-        int uploadStatus = uploadFile(uploadUri, file);
+    /**
+     * Get the asset details and analysis status
+     *
+     * @param assetId Asset ID
+     *
+     * @return Asset details
+     * */
+    public AssetDetails getAssetDetails(String assetId) {
+        QueryResponse<AssetDetailsWrapper<AssetDetails>> response = client.postQuery(uri,
+                new Query<>(Queries.ASSET_DETAILS_QUERY, new Variables<>(new AssetInput(assetId))),
+                new TypeReference<>() {}, timeouts.graphql());
 
-        int uploadRetry = 0;
-        while (uploadStatus != 200 && uploadRetry++ < UPLOAD_RETRY_NUMBER) {
-            uploadStatus = uploadFile(uploadUri, file);
+        if (response.data() == null || response.data().asset() == null) {
+            throw new UploadException("Couldn't get the asset details" + errorOf(response));
         }
 
-        if (uploadStatus != 200) {
-            log.error("Couldn't upload the file to the server", file, ". Upload URL:", uploadUri);
-            throw new UploadException("Couldn't upload the file to the server");
+        return response.data().asset();
+    }
+
+    private static String errorOf(QueryResponse<?> response) {
+        String error = response.errors() != null
+                ? response.errors().stream().map(QueryError::message).collect(Collectors.joining(", "))
+                : null;
+        return error != null ? ": " + error : ".";
+    }
+
+    /**
+     * Prepare the token and the connections for the next uploads, see {@link Client#warmUp}
+     *
+     * @param minTokenValidity Time in milliseconds the token should stay valid
+     * */
+    public void warmUp(long minTokenValidity) {
+        client.warmUp(uri, new Query<>(Queries.PING_QUERY, null), minTokenValidity);
+    }
+
+    /**
+     * Set the timeouts of the request phases
+     * */
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+        client.setTimeouts(timeouts);
+        TransferClient transferClient = new TransferClient(timeouts.uploadIdle());
+        transferClient.setStallPolicy(stallPolicy);
+        this.transferClient = transferClient;
+    }
+
+    /**
+     * Set when the upload with the collapsed throughput is restarted
+     * */
+    public void setStallPolicy(StallPolicy stallPolicy) {
+        this.stallPolicy = stallPolicy;
+        transferClient.setStallPolicy(stallPolicy);
+    }
+
+    /**
+     * Send one more status request if there is no response within the usual (95th percentile) latency.
+     * The status query is idempotent, so the first response is used.
+     * */
+    public void setHedgedStatus(boolean hedgedStatus) {
+        this.hedgedStatus = hedgedStatus;
+    }
+
+    /**
+     * Wait for the processing callbacks instead of the frequent status polling
+     *
+     * @param registry The registry the callbacks are delivered to, null to poll the status only
+     * @param timeout Time in milliseconds to wait for the callback before the status is polled
+     * */
+    public void setCallbacks(UploadCallbackRegistry registry, long timeout) {
+        this.callbacks = registry;
+        this.callbackTimeout = timeout;
+        this.webhooks = registry != null;
+    }
+
+    /**
+     * Receive the upload status changes through the GraphQL subscription shared by all the uploads
+     * instead of the frequent status polling. No inbound connection is needed.
+     * If the server doesn't support the subscriptions, the status is polled.
+     *
+     * @param registry The registry the status changes are delivered to
+     * @param timeout Time in milliseconds to wait for the status change before the status is polled
+     * */
+    public void enableStatusSubscription(UploadCallbackRegistry registry, long timeout) {
+        this.subscriptions = new SubscriptionClient(client, uri);
+        if (callbacks == null) {
+            this.callbacks = registry;
+            this.callbackTimeout = timeout;
+        }
+    }
+
+    /**
+     * Close the status subscription connection
+     * */
+    public void close() {
+        SubscriptionClient subscriptionClient = subscriptions;
+        if (subscriptionClient != null) {
+            subscriptionClient.close();
         }
+    }
 
+    /**
+     * Poll the upload status until the asset is created.
+     * If the callbacks are enabled or the status subscription is open, the pushed status is awaited first
+     * and the status is polled slowly after the timeout in case it is lost; the late push still completes the wait.
+     *
+     * @param uploadId Upload ID
+     *
+     * @return Asset ID
+     * */
+    public String waitForAsset(String uploadId) {
+        return waitForAsset(uploadId, Deadline.none());
+    }
+
+    /**
+     * Wait for the asset within the deadline
+     *
+     * @param uploadId Upload ID
+     * @param deadline Overall deadline of the upload
+     *
+     * @return Asset ID
+     * */
+    public String waitForAsset(String uploadId, Deadline deadline) {
+        UploadCallbackRegistry registry = callbacks;
+        if (registry == null) {
+            return pollForAsset(uploadId, null, UPLOAD_STATUS_CHECK_TIMEOUT, deadline);
+        }
+
+        CompletableFuture<String> callback = registry.register(uploadId);
+        SubscriptionClient subscriptionClient = subscriptions;
+        CompletableFuture<String> subscriptionEnded = new CompletableFuture<>();
+        boolean subscribed = subscriptionClient != null && subscriptionClient.subscribe(uploadId,
+                Queries.ASSET_UPLOAD_SUBSCRIPTION, new Variables<>(new AssetUploadInput(uploadId)),
+                payload -> {
+                    JsonNode status = payload.path("data").path("assetUpload");
+                    if (status.path("uploaded").asBoolean(false)) {
+                        registry.complete(uploadId, status.path("assetId").asText(null));
+                    }
+                },
+                error -> {
+                    log.debug("The status subscription ended:", uploadId, error.getMessage());
+                    subscriptionEnded.complete(null);
+                });
+        try {
+            if (!webhooks && !subscribed) {
+                // nothing is pushed, the callback future only shortcuts the polling
+                return pollForAsset(uploadId, callback, UPLOAD_STATUS_CHECK_TIMEOUT, deadline);
+            }
+            if (subscribed) {
+                // the file may be processed before the subscription started, its change isn't pushed then
+                AssetUploadResponse status = checkStatus(uploadId, deadline);
+                if (Boolean.TRUE.equals(status.uploaded())) {
+                    log.debug("The file is uploaded. Asset ID:", status.assetId());
+                    return status.assetId();
+                }
+            }
+            log.debug("Wait for the upload callback:", uploadId);
+            String assetId = await(webhooks ? callback : callback.applyToEither(subscriptionEnded, Function.identity()),
+                    deadline.limit(callbackTimeout));
+            if (assetId != null) {
+                log.debug("The file is uploaded (callback). Asset ID:", assetId);
+                return assetId;
+            }
+            if (!webhooks && subscriptionEnded.isDone()) {
+                log.debug("No status subscription, poll the status");
+                return pollForAsset(uploadId, callback, UPLOAD_STATUS_CHECK_TIMEOUT, deadline);
+            }
+            log.debug("No upload callback in", callbackTimeout, "ms, check the status");
+            return pollForAsset(uploadId, callback, UPLOAD_STATUS_SLOW_CHECK_TIMEOUT, deadline);
+        } finally {
+            if (subscribed) {
+                subscriptionClient.unsubscribe(uploadId);
+            }
+            registry.unregister(uploadId);
+        }
+    }
+
+    private String pollForAsset(String uploadId, CompletableFuture<String> callback, long interval, Deadline deadline) {
         long retry = 0;
-        log.debug("Check if uploading is finished:", submitAssetResponse.uploadId());
+        log.debug("Check if uploading is finished:", uploadId);
 
         while (true) {
-            QueryResponse<AssetUploadWrapper<AssetUploadResponse>> uploadResponse = client.post(uri,
-                            new Query<>(Queries.ASSET_UPLOAD_QUERY, new Variables<>(
-                                    new AssetUploadInput(submitAssetResponse.uploadId()))))
-                    .asJson(new TypeReference<>() {});
-            AssetUploadResponse assetUploadResponse = uploadResponse.data() != null && uploadResponse.data().assetUpload() != null
-                    ? uploadResponse.data().assetUpload()
-                    : new AssetUploadResponse(null, null, false);
+            AssetUploadResponse assetUploadResponse = checkStatus(uploadId, deadline);
             boolean uploaded = Boolean.TRUE.equals(assetUploadResponse.uploaded());
             retry ++;
             if (uploaded) {
@@ -94,19 +440,130 @@ public class UploadService {
             } else if (retry > UPLOAD_CHECK_STATUS_MAX_NUMBER) {
                 throw new UploadException("Couldn't check the upload status after " + UPLOAD_CHECK_STATUS_MAX_NUMBER + " tries");
             } else {
-                log.debug(retry, "retry check if file is uploaded", submitAssetResponse.uploadId());
-                try {
-                    Thread.sleep(UPLOAD_STATUS_CHECK_TIMEOUT);
-                } catch (InterruptedException e) {
-                    log.error("File upload status check is failed: " + assetUploadResponse.assetId(), e);
-                    throw new UploadException(e.getLocalizedMessage());
+                log.debug(retry, "retry check if file is uploaded", uploadId);
+                if (callback != null) {
+                    String assetId = await(callback, deadline.limit(interval));
+                    if (assetId != null) {
+                        log.debug("The file is uploaded (callback). Asset ID:", assetId);
+                        return assetId;
+                    }
+                } else {
+                    try {
+                        Thread.sleep(deadline.limit(interval));
+                    } catch (InterruptedException e) {
+                        log.error("File upload status check is failed: " + assetUploadResponse.assetId(), e);
+                        throw new UploadException(e.getLocalizedMessage());
+                    }
                 }
             }
         }
     }
 
-    protected int uploadFile(URI uploadUri, Path path) {
-        return client.upload(uploadUri, path).getStatusCode();
+    /**
+     * Query the upload status once
+     * */
+    private AssetUploadResponse checkStatus(String uploadId, Deadline deadline) {
+        QueryResponse<AssetUploadWrapper<AssetUploadResponse>> uploadResponse = getStatus(uploadId, deadline);
+        return uploadResponse.data() != null && uploadResponse.data().assetUpload() != null
+                ? uploadResponse.data().assetUpload()
+                : new AssetUploadResponse(null, null, false);
+    }
+
+    /**
+     * Query the upload status, the hedged request is sent if it is enabled
+     * */
+    private QueryResponse<AssetUploadWrapper<AssetUploadResponse>> getStatus(String uploadId, Deadline deadline) {
+        Query<AssetUploadInput> query = new Query<>(Queries.ASSET_UPLOAD_QUERY,
+                new Variables<>(new AssetUploadInput(uploadId)));
+        Duration timeout = deadline.timeout("status check", timeouts.graphql());
+        if (hedgedStatus) {
+            return client.postQueryHedged(uri, query, new TypeReference<>() {}, timeout, statusLatencies);
+        }
+        return client.postQuery(uri, query, new TypeReference<>() {}, timeout);
+    }
+
+    /**
+     * Wait for the callback
+     *
+     * @return Asset ID or null if the callback didn't come in time
+     * */
+    private static String await(CompletableFuture<String> callback, long timeout) {
+        try {
+            return callback.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw new UploadException("Upload callback is failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadException("File upload status check is interrupted", e);
+        }
+    }
+
+    private TransferResult transfer(URI uploadUri, Transfer transfer, Deadline deadline) {
+        deadline.check("transfer");
+        if (!deadline.isDefined()) {
+            try {
+                return transfer.transfer(uploadUri);
+            } catch (IOException e) {
+                throw new UploadException("Couldn't upload the file to the server", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UploadException("File upload is interrupted", e);
+            }
+        }
+
+        long owner = Thread.currentThread().getId();
+        // the transfer may run on the agent, the cancellation interrupts the remote call
+        Future<TransferResult> future = transferExecutor.submit(() -> {
+            long id = Thread.currentThread().getId();
+            transferOwners.put(id, owner);
+            try {
+                return transfer.transfer(uploadUri);
+            } finally {
+                transferOwners.remove(id);
+            }
+        });
+        try {
+            return future.get(deadline.remaining(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw deadline.exceeded("transfer");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new UploadException("File upload is interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (cause instanceof Error error) {
+                throw error;
+            } else if (cause instanceof InterruptedException) {
+                throw new UploadException("File upload is interrupted", cause);
+            }
+            throw new UploadException("Couldn't upload the file to the server", cause);
+        }
+    }
+
+    /**
+     * Return the ID of the thread waiting for the transfer run by the given thread,
+     * or the given ID if the thread doesn't run a transfer (e.g. to route the transfer logs to the build console)
+     * */
+    public static long getOwnerThreadId(long threadId) {
+        return transferOwners.getOrDefault(threadId, threadId);
+    }
+
+    protected TransferResult uploadFile(URI uploadUri, Path path) {
+        return transferClient.put(uploadUri, path);
+    }
+
+    /**
+     * Sends the file bytes to the upload url
+     * */
+    @FunctionalInterface
+    public interface Transfer {
+        TransferResult transfer(URI uploadUri) throws IOException, InterruptedException;
     }
 
 }
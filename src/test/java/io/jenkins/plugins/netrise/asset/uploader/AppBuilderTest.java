@@ -1,13 +1,16 @@
 package io.jenkins.plugins.netrise.asset.uploader;
 
+import com.sun.net.httpserver.HttpServer;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
 import hudson.slaves.EnvironmentVariablesNodeProperty;
+import hudson.tasks.ArtifactArchiver;
 import hudson.util.Secret;
 import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import io.jenkins.plugins.netrise.asset.uploader.service.Deadline;
 import io.jenkins.plugins.netrise.asset.uploader.service.UploadService;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
@@ -20,9 +23,16 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.nio.file.Path;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -190,12 +200,110 @@ public class AppBuilderTest {
 
         when(builder.getUploadService(builder.getDescriptor())).thenReturn(mockService);
 
-        when(mockService.upload(any(Path.class), any(SubmitAssetInput.class)))
+        when(mockService.upload(anyString(), any(SubmitAssetInput.class), any(UploadService.Transfer.class),
+                any(Deadline.class)))
                 .thenReturn("Uploaded_Asset_ID_1");
 
         FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
         build.writeWholeLogTo(System.out);
         jenkins.assertLogContains("Asset is uploaded", build);
+
+        NetRiseUploadsAction action = build.getAction(NetRiseUploadsAction.class);
+        Assert.assertNotNull(action);
+        Assert.assertEquals(1, action.getCount());
+        Assert.assertEquals("Uploaded_Asset_ID_1", action.getUploads().get(0).assetId());
+        Assert.assertEquals(name, action.getAsset("Uploaded_Asset_ID_1").getName());
+    }
+
+    private void configure(AppBuilder builder) {
+        builder.getDescriptor().setOrgId(orgId);
+        builder.getDescriptor().setBaseUrl(baseUrl);
+        builder.getDescriptor().setClientId(clientId);
+        builder.getDescriptor().setClientSecret(Secret.fromString(clientSecret));
+        builder.getDescriptor().setTokenUrl(tokenUrl);
+        builder.getDescriptor().setAudience(audience);
+    }
+
+    @Test
+    public void testArchivedUpload() throws Exception {
+        FreeStyleProject upstream = jenkins.createFreeStyleProject("upstream");
+        FilePath ws = jenkins.jenkins.getWorkspaceFor(upstream);
+        Assert.assertNotNull(ws);
+        new FilePath(ws, artifact).write("Test data", "UTF-8");
+        upstream.getPublishersList().add(new ArtifactArchiver(artifact));
+        jenkins.buildAndAssertSuccess(upstream);
+        // the workspace isn't read, only the archived artifact
+        new FilePath(ws, artifact).delete();
+
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        builder.setArchived(true);
+        builder.setUpstreamJob("upstream");
+        // the standard artifact manager has no download urls
+        builder.setByReference(true);
+        project.getBuildersList().add(builder);
+        configure(builder);
+
+        // the upload url
+        AtomicReference<String> received = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", exchange -> {
+            received.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        FreeStyleBuild build;
+        try {
+            URI uploadUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/upload");
+            when(builder.getUploadService(builder.getDescriptor())).thenReturn(mockService);
+            when(mockService.upload(anyString(), any(SubmitAssetInput.class), any(UploadService.Transfer.class),
+                    any(Deadline.class)))
+                    .thenAnswer(invocation -> {
+                        invocation.getArgument(2, UploadService.Transfer.class).transfer(uploadUri);
+                        return "Uploaded_Asset_ID_1";
+                    });
+
+            build = jenkins.buildAndAssertSuccess(project);
+            build.writeWholeLogTo(System.out);
+            jenkins.assertLogContains("Archived file to upload: upstream #1 / " + artifact, build);
+            jenkins.assertLogContains("the artifact is streamed", build);
+            jenkins.assertLogContains("Asset is uploaded", build);
+        } finally {
+            server.stop(0);
+        }
+
+        Assert.assertEquals("Test data", received.get());
+        verify(mockService, never()).upload(anyString(), any(SubmitAssetInput.class), any(URI.class), any(Deadline.class));
+        NetRiseUploadsAction action = build.getAction(NetRiseUploadsAction.class);
+        Assert.assertNotNull(action);
+        Assert.assertEquals("Uploaded_Asset_ID_1", action.getUploads().get(0).assetId());
+    }
+
+    @Test
+    public void testDownloadUrlUpload() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        builder.setDownloadUrl("https://files.test.org/builds/${BUILD_NUMBER}/" + artifact + "?signature=secret");
+        project.getBuildersList().add(builder);
+        configure(builder);
+
+        when(builder.getUploadService(builder.getDescriptor())).thenReturn(mockService);
+        when(mockService.upload(anyString(), any(SubmitAssetInput.class), any(URI.class), any(Deadline.class)))
+                .thenReturn("Uploaded_Asset_ID_2");
+
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        build.writeWholeLogTo(System.out);
+        jenkins.assertLogContains("File to upload by reference: files.test.org", build);
+        jenkins.assertLogNotContains("signature=secret", build);
+        jenkins.assertLogContains("Asset is uploaded", build);
+
+        // NetRise downloads the file itself, no bytes are sent
+        verify(mockService).upload(eq(artifact), any(SubmitAssetInput.class),
+                eq(URI.create("https://files.test.org/builds/1/" + artifact + "?signature=secret")), any(Deadline.class));
+        verify(mockService, never()).upload(anyString(), any(SubmitAssetInput.class), any(UploadService.Transfer.class),
+                any(Deadline.class));
+        NetRiseUploadsAction action = build.getAction(NetRiseUploadsAction.class);
+        Assert.assertNotNull(action);
+        Assert.assertEquals("Uploaded_Asset_ID_2", action.getUploads().get(0).assetId());
     }
 
     @Test
@@ -0,0 +1,137 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaUploadCallableTest {
+
+    private static final Pattern CHUNK_HASH = Pattern.compile("\"sha256\"\\s*:\\s*\"([0-9a-f]{64})\"");
+
+    @TempDir
+    Path tmp;
+
+    private HttpServer server;
+    private URI store;
+    private final Map<String, byte[]> chunks = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> manifests = new ConcurrentHashMap<>();
+
+    /**
+     * Stand-in of the chunk store
+     * */
+    @BeforeEach
+    void startStore() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/store/", this::handle);
+        server.start();
+        store = URI.create("http://localhost:" + server.getAddress().getPort() + "/store");
+    }
+
+    @AfterEach
+    void stopStore() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().substring("/store/".length()).split("/");
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        int status = 404;
+        byte[] response = new byte[0];
+        if (path[0].equals("chunks")) {
+            chunks.put(path[1], body);
+            status = 201;
+        } else if (path[0].equals("manifests")) {
+            // the file hash is the first one in the manifest, the rest are the chunks
+            List<String> hashes = new ArrayList<>();
+            Matcher matcher = CHUNK_HASH.matcher(new String(body, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                hashes.add(matcher.group(1));
+            }
+            hashes.remove(path[1]);
+            List<String> missing = hashes.stream().filter(h -> !chunks.containsKey(h)).distinct().toList();
+            if (missing.isEmpty()) {
+                manifests.put(path[1], hashes);
+                status = 201;
+            } else {
+                status = 409;
+                response = ("{\"missing\":[\"" + String.join("\",\"", missing) + "\"]}").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        exchange.sendResponseHeaders(status, response.length > 0 ? response.length : -1);
+        if (response.length > 0) {
+            exchange.getResponseBody().write(response);
+        }
+        exchange.close();
+    }
+
+    private byte[] assemble(String sha256) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String hash : manifests.get(sha256)) {
+            out.write(chunks.get(hash));
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testSecondBuildSendsNewChunks() throws Exception {
+        byte[] firmware = new byte[4 * 1024 * 1024];
+        new Random(3).nextBytes(firmware);
+        Path first = Files.write(tmp.resolve("first.bin"), firmware);
+
+        DeltaUploadCallable.Result full = new DeltaUploadCallable(store, Set.of()).invoke(first.toFile(), null);
+        assertEquals(firmware.length, full.sentBytes());
+        assertArrayEquals(firmware, assemble(full.sha256()));
+
+        // the next build changes a few bytes
+        firmware[firmware.length / 3] ^= 1;
+        Path second = Files.write(tmp.resolve("second.bin"), firmware);
+
+        DeltaUploadCallable.Result delta = new DeltaUploadCallable(store, new HashSet<>(full.chunks()))
+                .invoke(second.toFile(), null);
+        assertTrue(delta.sentChunks() <= 2, "Sent chunks: " + delta.sentChunks());
+        assertTrue(delta.sentBytes() < firmware.length / 10);
+        assertArrayEquals(firmware, assemble(delta.sha256()));
+    }
+
+    @Test
+    void testMissingChunksAreSent() throws Exception {
+        byte[] firmware = new byte[1024 * 1024];
+        new Random(5).nextBytes(firmware);
+        Path file = Files.write(tmp.resolve("fw.bin"), firmware);
+
+        DeltaUploadCallable.Result full = new DeltaUploadCallable(store, Set.of()).invoke(file.toFile(), null);
+        // the store is purged, but the controller still knows the chunks
+        chunks.clear();
+
+        DeltaUploadCallable.Result again = new DeltaUploadCallable(store, new HashSet<>(full.chunks()))
+                .invoke(file.toFile(), null);
+        assertEquals(firmware.length, again.sentBytes());
+        assertArrayEquals(firmware, assemble(again.sha256()));
+    }
+}
@@ -0,0 +1,96 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.FilePath;
+import hudson.model.Fingerprint;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import jenkins.model.FingerprintFacet;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class NetRiseAssetFacetTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    final String artifact = "art.sh";
+    final String orgId = "Org_1";
+
+    private WorkflowRun archive(WorkflowJob job) throws Exception {
+        job.setDefinition(new CpsFlowDefinition("""
+            node {
+                writeFile text: 'hello', file: 'art.sh'
+                archiveArtifacts artifacts: 'art.sh', fingerprint: true
+            }
+        """, true));
+        return jenkins.buildAndAssertSuccess(job);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "test-lookup");
+        WorkflowRun run = archive(job);
+        FilePath wsFile = new FilePath(jenkins.jenkins.getWorkspaceFor(job), artifact);
+
+        Fingerprint fingerprint = NetRiseAssetFacet.lookup(run, artifact);
+        Assert.assertNotNull(fingerprint);
+        Assert.assertEquals(wsFile.digest(), fingerprint.getHashString());
+        Assert.assertNotNull(NetRiseAssetFacet.lookup(run, "./" + artifact));
+        Assert.assertNull(NetRiseAssetFacet.lookup(run, "other.sh"));
+
+        // the workspace file is still the archived one
+        Assert.assertNotNull(NetRiseAssetFacet.lookup(run, artifact, wsFile));
+
+        // the file is rebuilt after archiving
+        wsFile.write("hello, world", "UTF-8");
+        Assert.assertNull(NetRiseAssetFacet.lookup(run, artifact, wsFile));
+
+        wsFile.write("jello", "UTF-8");
+        wsFile.touch(System.currentTimeMillis() + 60_000);
+        Assert.assertNull(NetRiseAssetFacet.lookup(run, artifact, wsFile));
+    }
+
+    @Test
+    public void testFindAndRecord() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "test-find");
+        Fingerprint fingerprint = NetRiseAssetFacet.lookup(archive(job), artifact);
+        Assert.assertNotNull(fingerprint);
+
+        SubmitAssetInput input = new SubmitAssetInput("Bobby", "Model_1", "001", "Man_1");
+        SubmitAssetInput nextVersion = new SubmitAssetInput("Bobby", "Model_1", "002", "Man_1");
+        SubmitAssetInput otherName = new SubmitAssetInput("Alice", "Model_1", "001", "Man_1");
+        Assert.assertNull(NetRiseAssetFacet.find(fingerprint, orgId, input));
+
+        NetRiseAssetFacet.record(fingerprint, orgId, input, "Asset_1");
+        NetRiseAssetFacet found = NetRiseAssetFacet.find(fingerprint, orgId, input);
+        Assert.assertNotNull(found);
+        Assert.assertEquals("Asset_1", found.getAssetId());
+
+        // the same file submitted as another asset isn't uploaded yet
+        Assert.assertNull(NetRiseAssetFacet.find(fingerprint, orgId, nextVersion));
+        Assert.assertNull(NetRiseAssetFacet.find(fingerprint, orgId, otherName));
+        Assert.assertNull(NetRiseAssetFacet.find(fingerprint, "Org_2", input));
+
+        // the asset uploaded again replaces the recorded one
+        NetRiseAssetFacet.record(fingerprint, orgId, input, "Asset_2");
+        NetRiseAssetFacet.record(fingerprint, orgId, nextVersion, "Asset_3");
+        Assert.assertEquals("Asset_2", NetRiseAssetFacet.find(fingerprint, orgId, input).getAssetId());
+        Assert.assertEquals("Asset_3", NetRiseAssetFacet.find(fingerprint, orgId, nextVersion).getAssetId());
+        long facets = 0;
+        for (FingerprintFacet facet : fingerprint.getFacets()) {
+            if (facet instanceof NetRiseAssetFacet) {
+                facets++;
+            }
+        }
+        Assert.assertEquals(2, facets);
+
+        // the facets are saved with the fingerprint
+        Fingerprint loaded = Fingerprint.load(fingerprint.getHashString());
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals("Asset_2", NetRiseAssetFacet.find(loaded, orgId, input).getAssetId());
+    }
+}
@@ -0,0 +1,99 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadException;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadOutbox;
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class OutboxDrainWorkTest {
+
+    @TempDir
+    Path root;
+
+    private final SubmitAssetInput input = new SubmitAssetInput("Bobby", "Model_1", "001", "Man_1");
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final TaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+
+    private UploadOutbox.Entry enqueue(UploadOutbox outbox) throws Exception {
+        Path file = outbox.reserve("a", 9, 1000);
+        Files.writeString(file, "Test data");
+        // no build and fingerprint to complete
+        UploadOutbox.Entry entry = UploadOutbox.Entry.create("a", null, "image.bin", input, null);
+        outbox.save(entry);
+        return entry;
+    }
+
+    private static AppBuilder.DescriptorImpl descriptor(int maxRetries) {
+        AppBuilder.DescriptorImpl descriptor = mock(AppBuilder.DescriptorImpl.class);
+        when(descriptor.getOutboxMaxRetries()).thenReturn(maxRetries);
+        return descriptor;
+    }
+
+    @Test
+    void testRetryDelay() {
+        assertEquals(60_000, OutboxDrainWork.retryDelay(0));
+        assertEquals(120_000, OutboxDrainWork.retryDelay(1));
+        assertEquals(480_000, OutboxDrainWork.retryDelay(3));
+        assertEquals(3_600_000, OutboxDrainWork.retryDelay(6));
+        assertEquals(3_600_000, OutboxDrainWork.retryDelay(100));
+    }
+
+    @Test
+    void testDrain_Uploaded() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        UploadOutbox.Entry entry = enqueue(outbox);
+        UploadService service = mock(UploadService.class);
+        when(service.upload("image.bin", outbox.getFile(entry), input)).thenReturn("Asset_1");
+        AppBuilder.DescriptorImpl descriptor = descriptor(3);
+
+        OutboxDrainWork.drain(outbox, entry, service, descriptor, listener);
+
+        assertTrue(outbox.list().isEmpty());
+        assertFalse(Files.exists(root.resolve("a")));
+        verify(descriptor).recordUpload(service, null);
+        assertTrue(log.toString(StandardCharsets.UTF_8).contains("Asset ID: Asset_1"));
+    }
+
+    @Test
+    void testDrain_RetryWithBackoffThenFail() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        UploadOutbox.Entry entry = enqueue(outbox);
+        UploadService service = mock(UploadService.class);
+        UploadException error = new UploadException("Upload error");
+        when(service.upload(anyString(), any(Path.class), any(SubmitAssetInput.class))).thenThrow(error);
+        AppBuilder.DescriptorImpl descriptor = descriptor(2);
+
+        long start = System.currentTimeMillis();
+        OutboxDrainWork.drain(outbox, entry, service, descriptor, listener);
+
+        List<UploadOutbox.Entry> entries = outbox.list();
+        assertEquals(1, entries.size());
+        UploadOutbox.Entry retried = entries.get(0);
+        assertEquals(1, retried.attempts());
+        assertEquals("Upload error", retried.lastError());
+        assertTrue(retried.nextAttempt() >= start + 60_000);
+        verify(descriptor).recordFailure(service, error);
+
+        OutboxDrainWork.drain(outbox, retried, service, descriptor, listener);
+
+        // moved out of the queue, the file is kept
+        assertTrue(outbox.list().isEmpty());
+        assertTrue(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("a").resolve(UploadOutbox.PAYLOAD_FILE)));
+        assertTrue(log.toString(StandardCharsets.UTF_8).contains("failed after 2 attempt(s)"));
+    }
+}
@@ -0,0 +1,49 @@
+package io.jenkins.plugins.netrise.asset.uploader;
+
+import io.jenkins.plugins.netrise.asset.uploader.service.UploadCallbackRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadCallbackActionTest {
+
+    private static final byte[] BODY = "{\"uploadId\":\"u1\",\"assetId\":\"a1\",\"uploaded\":true}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testSignature() {
+        String signature = UploadCallbackAction.SIGNATURE_PREFIX
+                + HexFormat.of().formatHex(UploadCallbackAction.sign(BODY, "secret"));
+
+        assertTrue(UploadCallbackAction.verify(BODY, signature, "secret"));
+        assertFalse(UploadCallbackAction.verify(BODY, signature, "other"));
+        assertFalse(UploadCallbackAction.verify("{}".getBytes(StandardCharsets.UTF_8), signature, "secret"));
+        assertFalse(UploadCallbackAction.verify(BODY, null, "secret"));
+        assertFalse(UploadCallbackAction.verify(BODY, "sha256=zz", "secret"));
+    }
+
+    @Test
+    void testCallbackBeforeRegistration() throws Exception {
+        UploadCallbackRegistry registry = new UploadCallbackRegistry();
+
+        assertFalse(registry.complete("u1", "a1"));
+        CompletableFuture<String> callback = registry.register("u1");
+
+        assertEquals("a1", callback.getNow(null));
+        registry.unregister("u1");
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void testCallbackAfterRegistration() {
+        UploadCallbackRegistry registry = new UploadCallbackRegistry();
+        CompletableFuture<String> callback = registry.register("u2");
+
+        assertTrue(registry.complete("u2", "a2"));
+        assertEquals("a2", callback.getNow(null));
+    }
+}
@@ -0,0 +1,128 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedBodyHandlerTest {
+
+    static class TestSubscription implements Flow.Subscription {
+        boolean cancelled;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static HttpResponse.ResponseInfo info(int status, String contentType) {
+        HttpHeaders headers = HttpHeaders.of(Map.of(Client.CONTENT_TYPE_HEADER, List.of(contentType)), (String s1, String s2) -> true);
+        return new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return status;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return headers;
+            }
+
+            @Override
+            public java.net.http.HttpClient.Version version() {
+                return java.net.http.HttpClient.Version.HTTP_1_1;
+            }
+        };
+    }
+
+    private static List<ByteBuffer> chunk(String value) {
+        return List.of(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testSmallJsonBody() {
+        HttpResponse.BodySubscriber<String> subscriber = new BoundedBodyHandler(100, 10)
+                .apply(info(200, Client.APP_JSON_CONTENT_TYPE));
+        subscriber.onSubscribe(new TestSubscription());
+        subscriber.onNext(chunk("{\"message\":"));
+        subscriber.onNext(chunk("\"Success\"}"));
+        subscriber.onComplete();
+
+        assertEquals("{\"message\":\"Success\"}", subscriber.getBody().toCompletableFuture().join());
+    }
+
+    @Test
+    void testTooLargeJsonBodyFails() {
+        TestSubscription subscription = new TestSubscription();
+        HttpResponse.BodySubscriber<String> subscriber = new BoundedBodyHandler(10, 10)
+                .apply(info(200, Client.APP_JSON_CONTENT_TYPE));
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(chunk("{\"message\":\"Success\"}"));
+
+        assertTrue(subscription.cancelled);
+        assertThrows(CompletionException.class, () -> subscriber.getBody().toCompletableFuture().join());
+    }
+
+    @Test
+    void testTooLargeJsonBodyIsReported() {
+        HttpResponse.BodySubscriber<Supplier<Map<String, String>>> subscriber = new JsonBodyHandler<>(
+                new TypeReference<Map<String, String>>() {}, 10, 10).apply(info(200, Client.APP_JSON_CONTENT_TYPE));
+        subscriber.onSubscribe(new TestSubscription());
+        subscriber.onNext(chunk("{\"message\":\"Success\"}"));
+        subscriber.onComplete();
+
+        Supplier<Map<String, String>> body = subscriber.getBody().toCompletableFuture().join();
+        ClientException e = assertThrows(ClientException.class, body::get);
+        assertEquals("Response body is too large.", e.getMessage());
+        assertEquals("Response body exceeds 10 bytes.", e.getDescription());
+
+        ClientException sent = Client.toException(new IOException("Request failed",
+                new BoundedBodyHandler.TooLargeException(10)));
+        assertEquals("Response body is too large.", sent.getMessage());
+        assertEquals("Request sending error.", Client.toException(new IOException("Reset")).getMessage());
+    }
+
+    @Test
+    void testErrorBodyIsTruncated() {
+        TestSubscription subscription = new TestSubscription();
+        HttpResponse.BodySubscriber<String> subscriber = new BoundedBodyHandler(1000, 6)
+                .apply(info(502, "text/html"));
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(chunk("<html><body>Bad Gateway</body></html>"));
+
+        assertTrue(subscription.cancelled);
+        assertEquals("<html>" + BoundedBodyHandler.TRUNCATED_MARKER, subscriber.getBody().toCompletableFuture().join());
+    }
+
+    @Test
+    void testCharsetOf() {
+        assertEquals(StandardCharsets.UTF_8, BoundedBodyHandler.charsetOf(null));
+        assertEquals(StandardCharsets.UTF_8, BoundedBodyHandler.charsetOf("application/json"));
+        assertEquals(StandardCharsets.ISO_8859_1, BoundedBodyHandler.charsetOf("text/plain; charset=ISO-8859-1"));
+        assertEquals(StandardCharsets.UTF_8, BoundedBodyHandler.charsetOf("text/plain; charset=unknown-charset"));
+    }
+
+    @Test
+    void testResponseToStringIsTruncated() {
+        Client.Response response = new Client.Response(500, null, "x".repeat(10000));
+
+        assertTrue(response.toString().length() < 2000);
+        assertTrue(response.toString().endsWith(BoundedBodyHandler.TRUNCATED_MARKER));
+    }
+}
@@ -0,0 +1,91 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquire_ReleasedBufferIsReused() throws Exception {
+        BufferPool pool = new BufferPool(1024, 4096);
+        assertEquals(4, pool.getCapacity());
+
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.remaining());
+        buffer.limit(10).position(5);
+        assertEquals(1, pool.getAllocated());
+
+        pool.release(buffer);
+        assertEquals(0, pool.getAllocated());
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.limit());
+    }
+
+    @Test
+    public void testAcquire_WaitsWhenBudgetIsUsedUp() throws Exception {
+        BufferPool pool = new BufferPool(1024, 2048);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+
+        CompletableFuture<ByteBuffer> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+
+        pool.release(first);
+        assertSame(first, third.get(10, TimeUnit.SECONDS));
+        assertEquals(2, pool.getAllocated());
+        assertNotNull(second);
+    }
+
+    @Test
+    public void testDiscard_BufferCountsUntilCollected() throws Exception {
+        BufferPool pool = new BufferPool(1024, 2048);
+        AtomicReference<ByteBuffer> first = new AtomicReference<>(pool.acquire());
+        pool.acquire();
+
+        // a failed request may still refer to it: not reused and still counted
+        pool.discard(first.get());
+        assertEquals(2, pool.getAllocated());
+        CompletableFuture<ByteBuffer> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+
+        // the budget is free again when the buffer is collected
+        first.set(null);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!third.isDone() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNotNull(third.get(1, TimeUnit.SECONDS));
+        assertEquals(2, pool.getAllocated());
+    }
+
+    @Test
+    public void testRelease_ForeignBuffer() {
+        BufferPool pool = new BufferPool(1024, 2048);
+        assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(1024)));
+        assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(512)));
+        assertThrows(IllegalArgumentException.class, () -> pool.discard(ByteBuffer.allocate(1024)));
+    }
+}
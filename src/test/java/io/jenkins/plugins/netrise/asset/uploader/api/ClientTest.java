@@ -1,5 +1,8 @@
 package io.jenkins.plugins.netrise.asset.uploader.api;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.jenkins.plugins.netrise.asset.uploader.model.Query;
+import io.jenkins.plugins.netrise.asset.uploader.model.QueryResponse;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -12,9 +15,11 @@ import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -229,6 +234,30 @@ public class ClientTest {
         verify(mockHttpClient, times(2)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
     }
 
+    @Test
+    void testPost_TooLargeResponse() throws Exception {
+        mockAuthentication();
+
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenThrow(new IOException(new BoundedBodyHandler.TooLargeException(1024)));
+
+        ClientException e = assertThrows(ClientException.class, () -> client.post(URI.create("https://example.com"),
+                Map.of(), new TypeReference<Map<String, String>>() {}));
+        assertEquals("Response body is too large.", e.getMessage());
+    }
+
+    @Test
+    void testPost_InterruptIsKept() throws Exception {
+        mockAuthentication();
+
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenThrow(new InterruptedException());
+
+        assertThrows(ClientException.class, () -> client.post(URI.create("https://example.com"),
+                Map.of(), new TypeReference<Map<String, String>>() {}));
+        assertTrue(Thread.interrupted());
+    }
+
     @Test
     void testSend_HandlesServerError() throws Exception {
         HttpRequest request = HttpRequest.newBuilder().uri(URI.create("https://example.com")).GET().build();
@@ -405,6 +434,138 @@ public class ClientTest {
         assertThrows(ClientException.class, () -> client.get(URI.create("https://example.com")));
     }
 
+    @Test
+    void testAuthenticate_MinValidity() throws Exception {
+        mockAuthentication(); // the token expires in an hour
+
+        assertTrue(client.authenticate(30 * 60 * 1000L).isValid());
+        assertTrue(client.authenticate(2 * 60 * 60 * 1000L).isValid());
+
+        // the cached token is reused unless it expires too soon
+        verify(mockHttpClient, times(2)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testPostHedged_SlowFirstRequest() throws Exception {
+        mockAuthentication();
+        whenSuccessfulResponse("{\"message\":\"Success\"}");
+
+        CompletableFuture<HttpResponse<String>> slow = new CompletableFuture<>();
+        doReturn(slow, CompletableFuture.completedFuture(mockResponse))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        LatencyTracker latencies = new LatencyTracker();
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            latencies.add(10);
+        }
+
+        Map<String, String> result = client.postHedged(URI.create("https://example.com"), Map.of(),
+                new TypeReference<>() {}, Duration.ofSeconds(5), latencies);
+
+        assertEquals("Success", result.get("message"));
+        assertTrue(slow.isCancelled());
+        verify(mockHttpClient, times(2)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    private HttpResponse<String> jsonResponse(String json) {
+        return jsonResponse(200, json);
+    }
+
+    private HttpResponse<String> jsonResponse(int status, String json) {
+        @SuppressWarnings("unchecked")
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.headers()).thenReturn(getJsonContentTypeHeaders());
+        when(response.body()).thenReturn(json);
+        return response;
+    }
+
+    @Test
+    void testPostQuery_PersistedQueryNotFound() throws Exception {
+        mockAuthentication();
+        URI uri = URI.create("https://example.com/graphql");
+
+        doReturn(CompletableFuture.completedFuture(jsonResponse("{\"errors\":[{\"message\":\"PersistedQueryNotFound\"}]}")),
+                CompletableFuture.completedFuture(jsonResponse("{\"data\":{\"message\":\"Success\"}}")),
+                CompletableFuture.completedFuture(jsonResponse("{\"data\":{\"message\":\"Again\"}}")))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        QueryResponse<Map<String, String>> response = client.postQueryHedged(uri, new Query<>("query Q { message }", null),
+                new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker());
+        assertEquals("Success", response.data().get("message"));
+        assertEquals(Boolean.TRUE, client.isPersistedQuerySupported(uri));
+
+        // the hash is known now: one request
+        response = client.postQueryHedged(uri, new Query<>("query Q { message }", null),
+                new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker());
+        assertEquals("Again", response.data().get("message"));
+        verify(mockHttpClient, times(3)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testPostQuery_PersistedQueryNotSupported() throws Exception {
+        mockAuthentication();
+        URI uri = URI.create("https://example.com/graphql");
+
+        doReturn(CompletableFuture.completedFuture(jsonResponse("{\"errors\":[{\"message\":\"PersistedQueryNotSupported\"}]}")),
+                CompletableFuture.completedFuture(jsonResponse("{\"data\":{\"message\":\"Success\"}}")))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        for (int i = 0; i < 2; i++) {
+            QueryResponse<Map<String, String>> response = client.postQueryHedged(uri, new Query<>("query Q { message }", null),
+                    new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker());
+            assertEquals("Success", response.data().get("message"));
+        }
+        assertEquals(Boolean.FALSE, client.isPersistedQuerySupported(uri));
+        // the full query is sent without asking again
+        verify(mockHttpClient, times(3)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testPostQuery_FailedMutationIsSentOnce() throws Exception {
+        mockAuthentication();
+        URI uri = URI.create("https://example.com/graphql");
+
+        doReturn(CompletableFuture.completedFuture(jsonResponse("{\"data\":null,\"errors\":[{\"message\":\"Invalid input\"}]}")))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        QueryResponse<Map<String, String>> response = client.postQueryHedged(uri, new Query<>("mutation M { submit }", null),
+                new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker());
+        assertNull(response.data());
+        assertEquals("Invalid input", response.errors().get(0).message());
+        assertNull(client.isPersistedQuerySupported(uri));
+        verify(mockHttpClient, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testPostQuery_UnauthorizedDoesNotDisablePersistedQueries() throws Exception {
+        mockAuthentication();
+        URI uri = URI.create("https://example.com/graphql");
+
+        doReturn(CompletableFuture.completedFuture(jsonResponse(401, "{\"error\":\"unauthorized\"}")))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        assertThrows(ClientException.class, () -> client.postQueryHedged(uri, new Query<>("query Q { message }", null),
+                new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker()));
+        assertNull(client.isPersistedQuerySupported(uri));
+        verify(mockHttpClient, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testPostQuery_PersistedQueryNotSupportedStatus() throws Exception {
+        mockAuthentication();
+        URI uri = URI.create("https://example.com/graphql");
+
+        doReturn(CompletableFuture.completedFuture(jsonResponse(400, "{\"error\":\"PersistedQueryNotSupported\"}")),
+                CompletableFuture.completedFuture(jsonResponse("{\"data\":{\"message\":\"Success\"}}")))
+                .when(mockHttpClient).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        QueryResponse<Map<String, String>> response = client.postQueryHedged(uri, new Query<>("query Q { message }", null),
+                new TypeReference<>() {}, Duration.ofSeconds(5), new LatencyTracker());
+        assertEquals("Success", response.data().get("message"));
+        assertEquals(Boolean.FALSE, client.isPersistedQuerySupported(uri));
+    }
+
     /*@Test
     void testSend_UnstructuredJsonResponse() throws Exception {
         mockAuthentication();
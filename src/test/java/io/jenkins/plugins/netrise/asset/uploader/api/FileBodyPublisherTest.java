@@ -0,0 +1,148 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileBodyPublisherTest {
+
+    @TempDir
+    Path tmp;
+
+    private Path file(int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Path file = Files.createTempFile(tmp, "body", ".bin");
+        Files.write(file, data);
+        return file;
+    }
+
+    /**
+     * Request one chunk at a time and collect the body
+     * */
+    private static byte[] read(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.writeBytes(bytes);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSubscribe_Mapped() throws Exception {
+        Path file = file(1000_000 + 17);
+        byte[] body = read(new FileBodyPublisher(file, 64 * 1024, 2, true));
+        assertArrayEquals(Files.readAllBytes(file), body);
+    }
+
+    @Test
+    public void testSubscribe_MappedWindows() throws Exception {
+        Path file = file(1000_000 + 17);
+        // 3 chunks a window, the last window is shorter
+        byte[] body = read(new FileBodyPublisher(file, 64 * 1024, 2, true, 200 * 1024));
+        assertArrayEquals(Files.readAllBytes(file), body);
+    }
+
+    @Test
+    public void testSubscribe_MappedTruncated() throws Exception {
+        Path file = file(1000_000);
+        FileBodyPublisher publisher = new FileBodyPublisher(file, 64 * 1024, 2, true, 256 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(500_000);
+        }
+        ExecutionException error = assertThrows(ExecutionException.class, () -> read(publisher));
+        assertInstanceOf(IOException.class, error.getCause());
+    }
+
+    @Test
+    public void testSubscribe_Direct() throws Exception {
+        Path file = file(1000_000 + 17);
+        int allocated = BufferPool.get().getAllocated();
+        byte[] body = read(new FileBodyPublisher(file, 64 * 1024, 2, false));
+        assertArrayEquals(Files.readAllBytes(file), body);
+        // the published chunks are copies, the pooled buffers are given back
+        assertEquals(allocated, BufferPool.get().getAllocated());
+    }
+
+    @Test
+    public void testSubscribe_Empty() throws Exception {
+        Path file = file(0);
+        assertEquals(0, read(FileBodyPublisher.ofFile(file)).length);
+    }
+
+    @Test
+    public void testSubscribe_Backpressure() throws Exception {
+        Path file = file(1000_000);
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch requested = new CountDownLatch(2);
+        CompletableFuture<FileBodyPublisher.FileSubscription> subscribed = new CompletableFuture<>();
+        new FileBodyPublisher(file, 64 * 1024, 4, true).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribed.complete((FileBodyPublisher.FileSubscription) subscription);
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                received.incrementAndGet();
+                requested.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        // the chunks read ahead are not published until they are requested
+        assertTrue(requested.await(10, TimeUnit.SECONDS));
+        subscribed.get(10, TimeUnit.SECONDS).reading().get(10, TimeUnit.SECONDS);
+        assertEquals(2, received.get());
+    }
+}
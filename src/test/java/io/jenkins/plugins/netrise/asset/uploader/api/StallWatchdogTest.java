@@ -0,0 +1,30 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StallWatchdogTest {
+
+    @Test
+    public void testIsStalled_SlidingWindow() {
+        StallWatchdog watchdog = new StallWatchdog(new StallPolicy(1000, Duration.ofSeconds(10), 1), 0);
+
+        // the first window is not over yet
+        assertFalse(watchdog.isStalled(100_000, 5_000));
+        assertFalse(watchdog.isStalled(110_000, 10_000));
+        // 12 KB within the last 10 s
+        assertFalse(watchdog.isStalled(112_000, 15_000));
+        // 3 KB within the last 10 s
+        assertTrue(watchdog.isStalled(115_000, 25_000));
+        assertEquals(300, Math.round(watchdog.getWindowRate()));
+    }
+
+    @Test
+    public void testIsStalled_Disabled() {
+        StallWatchdog watchdog = new StallWatchdog(StallPolicy.DISABLED, 0);
+        assertFalse(watchdog.isStalled(0, 1_000_000));
+    }
+}
@@ -0,0 +1,138 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SubscriptionClientTest {
+
+    static class TokenClient extends Client {
+        TokenClient() {
+            super(URI.create("https://example.com/auth"), "orgId", "clientId", "clientSecret", "audience");
+        }
+
+        @Override
+        public TokenInstance authenticate() {
+            return new TokenInstance(new TokenResponse("token", null, 3600L, "Bearer"));
+        }
+    }
+
+    private final Client client = new TokenClient();
+    private final CompletableFuture<JsonNode> next = new CompletableFuture<>();
+    private final CompletableFuture<ClientException> ended = new CompletableFuture<>();
+
+    /**
+     * Acknowledge the connection, the subscriptions are answered by the test
+     * */
+    private static void acknowledge(WebSocketStub.Connection connection, String message) {
+        if (message.contains("\"connection_init\"")) {
+            connection.send("{\"type\":\"connection_ack\"}");
+        }
+    }
+
+    private boolean subscribe(SubscriptionClient subscriptions, String id) {
+        return subscriptions.subscribe(id, "subscription { status }", Map.of("id", id), next::complete, ended::complete);
+    }
+
+    private static String type(String message) throws Exception {
+        return Client.MAPPER.readTree(message).path("type").asText();
+    }
+
+    @Test
+    void testAckAndNext() throws Exception {
+        try (WebSocketStub stub = new WebSocketStub(SubscriptionClientTest::acknowledge)) {
+            SubscriptionClient subscriptions = new SubscriptionClient(client, stub.getUri());
+            assertTrue(subscribe(subscriptions, "u1"));
+
+            JsonNode init = Client.MAPPER.readTree(stub.take());
+            assertEquals("connection_init", init.path("type").asText());
+            assertEquals("Bearer token", init.path("payload").path(Client.AUTHORIZATION_HEADER).asText());
+            JsonNode subscribe = Client.MAPPER.readTree(stub.take());
+            assertEquals("subscribe", subscribe.path("type").asText());
+            assertEquals("u1", subscribe.path("id").asText());
+            assertEquals("u1", subscribe.path("payload").path("variables").path("id").asText());
+
+            stub.getConnections().get(0).send("{\"id\":\"u1\",\"type\":\"next\",\"payload\":{\"data\":{\"status\":\"done\"}}}");
+            assertEquals("done", next.get(10, TimeUnit.SECONDS).path("data").path("status").asText());
+
+            subscriptions.unsubscribe("u1");
+            assertEquals("complete", type(stub.take()));
+            assertEquals(0, subscriptions.size());
+            assertFalse(ended.isDone());
+        }
+    }
+
+    @Test
+    void testErrorEndsSubscription() throws Exception {
+        try (WebSocketStub stub = new WebSocketStub((connection, message) -> {
+            acknowledge(connection, message);
+            if (message.contains("\"subscribe\"")) {
+                connection.send("{\"id\":\"u1\",\"type\":\"error\",\"payload\":[{\"message\":\"Not allowed\"}]}");
+            }
+        })) {
+            SubscriptionClient subscriptions = new SubscriptionClient(client, stub.getUri());
+            assertTrue(subscribe(subscriptions, "u1"));
+
+            ClientException reason = ended.get(10, TimeUnit.SECONDS);
+            assertTrue(reason.getMessage().contains("Subscription error"));
+            assertEquals(0, subscriptions.size());
+            assertFalse(next.isDone());
+        }
+    }
+
+    @Test
+    void testReconnect() throws Exception {
+        try (WebSocketStub stub = new WebSocketStub(SubscriptionClientTest::acknowledge)) {
+            SubscriptionClient subscriptions = new SubscriptionClient(client, stub.getUri());
+            assertTrue(subscribe(subscriptions, "u1"));
+            assertEquals("connection_init", type(stub.take()));
+            assertEquals("subscribe", type(stub.take()));
+
+            stub.getConnections().get(0).drop();
+
+            // the subscription is sent again on the new connection
+            assertEquals("connection_init", type(stub.take()));
+            assertEquals("subscribe", type(stub.take()));
+            assertEquals(2, stub.getConnections().size());
+            stub.getConnections().get(1).send("{\"id\":\"u1\",\"type\":\"next\",\"payload\":{\"data\":{\"status\":\"done\"}}}");
+            assertEquals("done", next.get(10, TimeUnit.SECONDS).path("data").path("status").asText());
+            assertFalse(ended.isDone());
+            subscriptions.unsubscribe("u1");
+        }
+    }
+
+    @Test
+    void testFallbackWhenNotAcknowledged() throws Exception {
+        try (WebSocketStub stub = new WebSocketStub((connection, message) -> connection.drop())) {
+            SubscriptionClient subscriptions = new SubscriptionClient(client, stub.getUri());
+            assertFalse(subscribe(subscriptions, "u1"));
+            assertEquals(0, subscriptions.size());
+
+            // the server isn't asked again for a while
+            assertFalse(subscribe(subscriptions, "u2"));
+            assertEquals(1, stub.getConnections().size());
+        }
+    }
+
+    @Test
+    void testFallbackWhenConnectionIsNotRestored() throws Exception {
+        SubscriptionClient subscriptions;
+        try (WebSocketStub stub = new WebSocketStub(SubscriptionClientTest::acknowledge)) {
+            subscriptions = new SubscriptionClient(client, stub.getUri());
+            assertTrue(subscribe(subscriptions, "u1"));
+            assertEquals("connection_init", type(stub.take()));
+            assertEquals("subscribe", type(stub.take()));
+        }
+
+        // the server is gone, the caller polls instead
+        ClientException reason = ended.get(30, TimeUnit.SECONDS);
+        assertEquals("Subscription connection is lost", reason.getMessage());
+        assertEquals(0, subscriptions.size());
+    }
+}
@@ -0,0 +1,147 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferClientTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void testStalledUploadIsAborted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // the storage accepts the connection but never answers
+        server.createContext("/", exchange -> {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            Path file = Files.writeString(tmp.resolve("fw.bin"), "firmware");
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/upload");
+
+            long start = System.currentTimeMillis();
+            ClientException e = assertThrows(ClientException.class,
+                    () -> new TransferClient(Duration.ofMillis(500)).put(uri, file));
+
+            assertTrue(e.getMessage().contains("stalled"), e.getMessage());
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testSlowUploadIsRestarted() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        List<Integer> ports = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        // the first upload goes at 320 KB/s, the next one at the full speed
+        server.createContext("/", exchange -> {
+            boolean slow = requests.incrementAndGet() == 1;
+            ports.add(exchange.getRemoteAddress().getPort());
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[32 * 1024];
+                while (in.read(buffer) > 0) {
+                    if (slow) {
+                        Thread.sleep(100);
+                    }
+                }
+                exchange.sendResponseHeaders(200, -1);
+            } catch (InterruptedException | IOException e) {
+                // the client cancelled the stalled upload
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            byte[] data = new byte[32 * 1024 * 1024];
+            Path file = Files.write(tmp.resolve("fw.bin"), data);
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/upload");
+
+            TransferClient client = new TransferClient(Duration.ofSeconds(10));
+            client.setStallPolicy(new StallPolicy(2 * 1024 * 1024, Duration.ofSeconds(1), 1));
+            TransferResult result = client.put(uri, file);
+
+            assertTrue(result.isSuccessful());
+            assertEquals(data.length, result.size());
+            assertEquals(2, requests.get());
+            // the restart goes on a new connection, the digests are of the restarted body only
+            assertNotEquals(ports.get(0), ports.get(1));
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data)), result.sha256());
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data)), result.md5());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testStaleContentMd5IsDropped() throws Exception {
+        List<String> headers = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // the storage rejects the body that doesn't match the Content-MD5 header
+        server.createContext("/", exchange -> {
+            String header = exchange.getRequestHeaders().getFirst("Content-MD5");
+            headers.add(String.valueOf(header));
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String md5;
+            try {
+                md5 = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(body));
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            exchange.sendResponseHeaders(header == null || header.equals(md5) ? 200 : 400, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            Path file = Files.writeString(tmp.resolve("fw.bin"), "firmware");
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/upload");
+            String md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(Files.readAllBytes(file)));
+            // the fingerprint of the previous content
+            String stale = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest("firmwar3".getBytes()));
+
+            TransferResult result = new TransferClient(Duration.ofSeconds(10)).put(uri, file, stale);
+
+            assertTrue(result.isSuccessful());
+            assertEquals(md5, result.md5());
+            assertEquals(2, headers.size());
+            assertNotEquals("null", headers.get(0));
+            assertEquals("null", headers.get(1));
+
+            headers.clear();
+            assertTrue(new TransferClient(Duration.ofSeconds(10)).put(uri, file, md5).isSuccessful());
+            assertEquals(1, headers.size());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferProgressTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testUpdate_ReportsEveryIntervalOrStep() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransferProgress progress = new TransferProgress("image.bin", 100 * MB,
+                new PrintStream(out, true, StandardCharsets.UTF_8), 5000, 5, 0);
+
+        // neither 5 s nor 5 % passed
+        progress.update(MB, 1000);
+        assertEquals("", out.toString(StandardCharsets.UTF_8));
+
+        // 5 %
+        progress.update(5 * MB, 2000);
+        // 5 s since the previous report
+        progress.update(6 * MB, 7000);
+        String[] reports = out.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(2, reports.length);
+        assertEquals("Uploading image.bin: 5% (5.0 of 100.0 MB), 2.50 MB/s, average 2.50 MB/s, ETA 0:00:38",
+                reports[0]);
+        assertEquals("Uploading image.bin: 6% (6.0 of 100.0 MB), 0.20 MB/s, average 0.86 MB/s, ETA 0:01:50",
+                reports[1]);
+    }
+
+    @Test
+    public void testUpdate_UnknownSize() {
+        TransferProgress progress = new TransferProgress("archive.tar", -1, null, 5000, 5, 0);
+        progress.update(10 * MB, 10_000);
+
+        assertEquals(-1, progress.getPercent());
+        assertEquals(-1, progress.getEtaSeconds());
+        assertEquals(MB, Math.round(progress.getAverageRate()));
+        assertEquals("Uploading archive.tar: 10.0 MB, 1.00 MB/s, average 1.00 MB/s", progress.toString());
+    }
+}
@@ -0,0 +1,39 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferResultTest {
+
+    private static final String MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+    private static TransferResult result(int status, String etag) {
+        return new TransferResult(status, 5, "sha", MD5, etag, 10);
+    }
+
+    @Test
+    void testMatchingEtag() {
+        assertTrue(result(200, "\"" + MD5.toUpperCase() + "\"").isSuccessful());
+    }
+
+    @Test
+    void testCorruptedContent() {
+        TransferResult result = result(200, "\"00000000000000000000000000000000\"");
+
+        assertFalse(result.isIntegrityValid());
+        assertFalse(result.isSuccessful());
+    }
+
+    @Test
+    void testUncheckableEtag() {
+        assertTrue(result(200, null).isSuccessful());
+        assertTrue(result(200, "\"" + MD5 + "-3\"").isSuccessful());
+        assertTrue(result(201, "0x8DC2F0AB12345").isSuccessful());
+    }
+
+    @Test
+    void testErrorStatus() {
+        assertFalse(result(403, null).isSuccessful());
+    }
+}
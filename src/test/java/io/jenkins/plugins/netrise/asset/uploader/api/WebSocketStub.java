@@ -0,0 +1,200 @@
+package io.jenkins.plugins.netrise.asset.uploader.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Minimal WebSocket server for the subscription tests: text frames only, no extensions.
+ * The received messages are queued, the handler answers them.
+ * */
+class WebSocketStub implements AutoCloseable {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final ServerSocket server;
+    private final BiConsumer<Connection, String> handler;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param handler Answers the received message
+     * */
+    WebSocketStub(BiConsumer<Connection, String> handler) throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.handler = handler;
+        Thread thread = new Thread(this::accept, "WebSocket stub");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    URI getUri() {
+        return URI.create("http://localhost:" + server.getLocalPort() + "/graphql");
+    }
+
+    /**
+     * Return the next received message or null if nothing is received in 10 s
+     * */
+    String take() throws InterruptedException {
+        return received.poll(10, TimeUnit.SECONDS);
+    }
+
+    List<Connection> getConnections() {
+        return connections;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Connection connection = new Connection(server.accept());
+                connections.add(connection);
+                Thread thread = new Thread(connection::serve, "WebSocket stub connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Connection connection : connections) {
+            connection.drop();
+        }
+    }
+
+    class Connection {
+        private final Socket socket;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        private void serve() {
+            try {
+                InputStream in = socket.getInputStream();
+                handshake(in);
+                while (true) {
+                    int opcode = in.read() & 0x0F;
+                    int second = in.read();
+                    if (second < 0) {
+                        return;
+                    }
+                    long length = second & 0x7F;
+                    if (length == 126) {
+                        length = (in.read() << 8) | in.read();
+                    } else if (length == 127) {
+                        length = 0;
+                        for (int i = 0; i < 8; i++) {
+                            length = (length << 8) | in.read();
+                        }
+                    }
+                    byte[] mask = (second & 0x80) != 0 ? in.readNBytes(4) : new byte[4];
+                    byte[] payload = in.readNBytes((int) length);
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i % 4];
+                    }
+                    if (opcode == 0x8) {
+                        write(0x8, payload);
+                        drop();
+                        return;
+                    } else if (opcode == 0x9) {
+                        write(0xA, payload);
+                    } else if (opcode == 0x1) {
+                        String message = new String(payload, StandardCharsets.UTF_8);
+                        received.add(message);
+                        handler.accept(this, message);
+                    }
+                }
+            } catch (IOException e) {
+                drop();
+            }
+        }
+
+        private void handshake(InputStream in) throws IOException {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            while (!request.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Connection is closed");
+                }
+                request.write(b);
+            }
+            String key = null;
+            for (String line : request.toString(StandardCharsets.ISO_8859_1).split("\r\n")) {
+                if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                    key = line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+            String accept;
+            try {
+                accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+                        .digest((key + GUID).getBytes(StandardCharsets.ISO_8859_1)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            OutputStream out = socket.getOutputStream();
+            synchronized (this) {
+                out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                        + "Upgrade: websocket\r\n"
+                        + "Connection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + accept + "\r\n"
+                        + "Sec-WebSocket-Protocol: " + SubscriptionClient.SUBPROTOCOL + "\r\n\r\n")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            }
+        }
+
+        /**
+         * Send the text message
+         * */
+        void send(String message) {
+            try {
+                write(0x1, message.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                drop();
+            }
+        }
+
+        private synchronized void write(int opcode, byte[] payload) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else {
+                out.write(126);
+                out.write(payload.length >> 8);
+                out.write(payload.length & 0xFF);
+            }
+            out.write(payload);
+            out.flush();
+        }
+
+        /**
+         * Close the socket without the closing handshake, as a lost connection
+         * */
+        void drop() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package io.jenkins.plugins.netrise.asset.uploader.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncJobLoggerHandlerTest {
+
+    /**
+     * Stream that blocks the writer until it is released
+     * */
+    static class BlockingStream extends OutputStream {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public synchronized void write(int b) {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                out.write(b, off, len);
+            }
+        }
+
+        synchronized String text() {
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testRecordsAreWritten() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out);
+
+        handler.publish(new LogRecord(Level.INFO, "First message"));
+        handler.publish(new LogRecord(Level.WARNING, "Second message"));
+        handler.close();
+
+        String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("First message"));
+        assertTrue(text.contains("Second message"));
+        assertTrue(text.indexOf("First message") < text.indexOf("Second message"));
+    }
+
+    @Test
+    void testPublishDoesNotBlockOnSlowStream() {
+        BlockingStream out = new BlockingStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out, 8, 2);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            handler.publish(new LogRecord(Level.INFO, "Message " + i));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000, "Publishing should not wait for the stream");
+        assertTrue(handler.getPending() <= 8);
+
+        out.release.countDown();
+        handler.close();
+
+        assertTrue(out.text().contains("log record(s) skipped"));
+    }
+
+    @Test
+    void testImportantRecordsAreKeptUnderBackpressure() {
+        BlockingStream out = new BlockingStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out, 4, 1);
+
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "Progress " + i));
+        }
+        handler.publish(new LogRecord(Level.SEVERE, "Upload failed"));
+
+        out.release.countDown();
+        handler.close();
+
+        assertTrue(out.text().contains("Upload failed"));
+    }
+
+    @Test
+    void testConsoleLinesKeepTheOrder() {
+        BlockingStream out = new BlockingStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out);
+
+        handler.publish(new LogRecord(Level.INFO, "Upload started"));
+        handler.getConsole().println("Transferred 9 bytes");
+        handler.publish(new LogRecord(Level.INFO, "Status checked"));
+
+        out.release.countDown();
+        handler.close();
+        handler.getConsole().println("Asset is uploaded");
+
+        String text = out.text();
+        assertTrue(text.indexOf("Upload started") < text.indexOf("Transferred 9 bytes"));
+        assertTrue(text.indexOf("Transferred 9 bytes") < text.indexOf("Status checked"));
+        assertTrue(text.indexOf("Status checked") < text.indexOf("Asset is uploaded"));
+        // the line is written as is
+        assertTrue(text.contains(System.lineSeparator() + "Transferred 9 bytes"));
+    }
+
+    @Test
+    void testCloseWritesPendingRecordsWhenInterrupted() throws Exception {
+        BlockingStream out = new BlockingStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out);
+        handler.publish(new LogRecord(Level.INFO, "First message"));
+        Thread.sleep(100);
+        handler.publish(new LogRecord(Level.SEVERE, "Upload failed"));
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.release.countDown();
+        }).start();
+        // the build is aborted
+        Thread.currentThread().interrupt();
+        handler.close();
+
+        assertTrue(Thread.interrupted());
+        assertTrue(out.text().contains("First message"));
+        assertTrue(out.text().contains("Upload failed"));
+    }
+
+    @Test
+    void testClosedHandlerIgnoresRecords() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncJobLoggerHandler handler = new AsyncJobLoggerHandler(out);
+        handler.close();
+
+        handler.publish(new LogRecord(Level.SEVERE, "Late message"));
+
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("Late message"));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncJobLoggerHandler(null));
+        assertThrows(IllegalArgumentException.class, () -> new AsyncJobLoggerHandler(new ByteArrayOutputStream(), 0, 1));
+    }
+}
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.model.AssetDetails;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AssetDetailsCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private AssetDetails load(String id) {
+        int call = calls.incrementAndGet();
+        if (id.startsWith("missing")) {
+            throw new UploadException("No such asset");
+        }
+        return new AssetDetails(id, "name", null, null, null, "status " + call, null);
+    }
+
+    private AssetDetailsCache cache() {
+        return new AssetDetailsCache(this::load, 2, 100, 1000, now::get);
+    }
+
+    @Test
+    void testFreshValueIsCached() {
+        AssetDetailsCache cache = cache();
+
+        assertEquals("status 1", cache.get("a").analysisStatus());
+        now.addAndGet(99);
+        assertEquals("status 1", cache.get("a").analysisStatus());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testStaleValueIsRevalidated() throws Exception {
+        AssetDetailsCache cache = cache();
+        cache.get("a");
+
+        now.addAndGet(500);
+        assertEquals("status 1", cache.get("a").analysisStatus());
+
+        for (int i = 0; i < 100 && calls.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 100 && "status 1".equals(cache.get("a").analysisStatus()); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("status 2", cache.get("a").analysisStatus());
+    }
+
+    @Test
+    void testExpiredValueIsReloaded() {
+        AssetDetailsCache cache = cache();
+        cache.get("a");
+
+        now.addAndGet(1100);
+        assertEquals("status 2", cache.get("a").analysisStatus());
+    }
+
+    @Test
+    void testFailureIsCached() {
+        AssetDetailsCache cache = cache();
+
+        assertNull(cache.get("missing"));
+        assertNull(cache.get("missing"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        AssetDetailsCache cache = cache();
+
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+
+        assertEquals(2, cache.size());
+    }
+}
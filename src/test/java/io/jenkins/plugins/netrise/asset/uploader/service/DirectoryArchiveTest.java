@@ -0,0 +1,134 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryArchiveTest {
+
+    @TempDir
+    Path tmp;
+
+    private Path createTree() throws IOException {
+        Path root = Files.createDirectories(tmp.resolve("rootfs"));
+        Files.writeString(root.resolve("hello.txt"), "Hello");
+        Files.write(root.resolve("empty"), new byte[0]);
+        Path sub = Files.createDirectories(root.resolve("sub").resolve("x".repeat(120)));
+        byte[] big = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(big);
+        Files.write(sub.resolve("big.bin"), big);
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(root.resolve("sub").resolve("file" + i), "content " + i);
+        }
+        return root;
+    }
+
+    private static byte[] readAll(DirectoryArchive archive) throws IOException {
+        try (InputStream in = archive.open()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Read the entry names from the archive, the long names are taken from the GNU long name entries
+     * */
+    private static List<String> names(byte[] tar) {
+        List<String> names = new ArrayList<>();
+        String longName = null;
+        int pos = 0;
+        while (pos + 512 <= tar.length && tar[pos] != 0) {
+            String name = new String(tar, pos, 100, StandardCharsets.UTF_8).replace("\0", "");
+            long size = Long.parseLong(new String(tar, pos + 124, 11, StandardCharsets.US_ASCII).trim(), 8);
+            char type = (char) tar[pos + 156];
+
+            long checksum = 0;
+            for (int i = 0; i < 512; i++) {
+                checksum += (i >= 148 && i < 156) ? ' ' : tar[pos + i] & 0xFF;
+            }
+            assertEquals(checksum, Long.parseLong(new String(tar, pos + 148, 6, StandardCharsets.US_ASCII).trim(), 8));
+
+            pos += 512;
+            if (type == 'L') {
+                longName = new String(tar, pos, (int) size - 1, StandardCharsets.UTF_8);
+            } else {
+                names.add(longName != null ? longName : name);
+                longName = null;
+            }
+            pos += (int) ((size + 511) / 512 * 512);
+        }
+        return names;
+    }
+
+    @Test
+    void testSizeIsKnownUpFront() throws Exception {
+        DirectoryArchive archive = new DirectoryArchive(createTree());
+
+        byte[] tar = readAll(archive);
+
+        assertEquals(archive.size(), tar.length);
+        assertEquals(0, tar.length % 512);
+    }
+
+    @Test
+    void testEntries() throws Exception {
+        DirectoryArchive archive = new DirectoryArchive(createTree(), 2, 1024);
+
+        List<String> names = names(readAll(archive));
+
+        assertTrue(names.contains("rootfs/"));
+        assertTrue(names.contains("rootfs/hello.txt"));
+        assertTrue(names.contains("rootfs/empty"));
+        assertTrue(names.contains("rootfs/sub/file19"));
+        assertTrue(names.contains("rootfs/sub/" + "x".repeat(120) + "/big.bin"));
+    }
+
+    @Test
+    void testStreamsAreRepeatable() throws Exception {
+        DirectoryArchive archive = new DirectoryArchive(createTree());
+
+        assertArrayEquals(readAll(archive), readAll(archive));
+    }
+
+    @Test
+    void testReadaheadDoesNotChangeContent() throws Exception {
+        Path root = createTree();
+
+        assertArrayEquals(readAll(new DirectoryArchive(root, 0, 0)), readAll(new DirectoryArchive(root, 8, 4096)));
+    }
+
+    private static long readaheadThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && "NetRise archive readahead".equals(t.getName()))
+                .count();
+    }
+
+    @Test
+    void testReadaheadThreadsEndWithoutClose() throws Exception {
+        // the stream is read to the end but never closed
+        InputStream in = new DirectoryArchive(createTree(), 4, 1024).open();
+        in.readAllBytes();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readaheadThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, readaheadThreads());
+    }
+
+    @Test
+    void testNotDirectory() throws Exception {
+        Path file = Files.writeString(tmp.resolve("file.txt"), "data");
+
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryArchive(file));
+    }
+}
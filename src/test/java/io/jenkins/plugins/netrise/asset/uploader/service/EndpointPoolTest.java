@@ -0,0 +1,108 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.ClientException;
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EndpointPoolTest {
+
+    static class MockService extends UploadService {
+        volatile boolean down;
+
+        MockService() {
+            super(URI.create("http://localhost"), URI.create("http://localhost/token"), "org", "id", "secret", "aud");
+        }
+
+        @Override
+        public void warmUp(long minTokenValidity) {
+            if (down) {
+                throw new ClientException("Connection refused");
+            }
+        }
+    }
+
+    private static EndpointPool.Endpoint endpoint(String uri) {
+        return new EndpointPool.Endpoint(URI.create(uri), new MockService());
+    }
+
+    @Test
+    public void testSelect_FirstWhileNotMeasured() {
+        EndpointPool pool = new EndpointPool(List.of(endpoint("http://eu"), endpoint("http://us")));
+        assertEquals(URI.create("http://eu"), pool.select().getUri());
+    }
+
+    @Test
+    public void testSelect_HigherThroughput() {
+        EndpointPool.Endpoint eu = endpoint("http://eu");
+        EndpointPool.Endpoint us = endpoint("http://us");
+        EndpointPool pool = new EndpointPool(List.of(eu, us));
+
+        eu.succeeded(20);
+        us.succeeded(80);
+        assertSame(eu, pool.select());
+
+        // 64 MB: 64 s in eu, 6.4 s in us
+        pool.uploaded(eu.getService(), new TransferResult(200, 1024 * 1024, null, null, null, 1000));
+        pool.uploaded(us.getService(), new TransferResult(200, 10 * 1024 * 1024, null, null, null, 1000));
+        assertSame(us, pool.select());
+        assertEquals(1, us.getUploads());
+        assertEquals(10 * 1024 * 1024, us.getThroughput());
+    }
+
+    @Test
+    public void testFailed_Failover() {
+        EndpointPool.Endpoint eu = endpoint("http://eu");
+        EndpointPool.Endpoint us = endpoint("http://us");
+        EndpointPool pool = new EndpointPool(List.of(eu, us));
+
+        // the file errors don't degrade the endpoint
+        pool.failed(eu.getService(), new UploadException("File is not found"));
+        assertTrue(eu.isHealthy());
+
+        pool.failed(eu.getService(), new UploadException("Upload error", new ClientException("Timeout")));
+        assertTrue(eu.isHealthy());
+        pool.failed(eu.getService(), new ClientException("Timeout"));
+        assertFalse(eu.isHealthy());
+        assertSame(us, pool.select());
+        assertEquals("Timeout", eu.getLastError());
+    }
+
+    @Test
+    public void testProbe_Recovery() {
+        EndpointPool.Endpoint eu = endpoint("http://eu");
+        EndpointPool.Endpoint us = endpoint("http://us");
+        EndpointPool pool = new EndpointPool(List.of(eu, us));
+
+        ((MockService) eu.getService()).down = true;
+        assertTrue(pool.probe(0));
+        assertTrue(pool.probe(0));
+        assertFalse(eu.isHealthy());
+        assertSame(us, pool.select());
+        assertTrue(us.getLatency() >= 0);
+        assertEquals(-1, eu.getLatency());
+
+        ((MockService) eu.getService()).down = false;
+        pool.probe(0);
+        assertTrue(eu.isHealthy());
+    }
+
+    @Test
+    public void testSelect_AllDegraded() {
+        EndpointPool.Endpoint eu = endpoint("http://eu");
+        EndpointPool.Endpoint us = endpoint("http://us");
+        EndpointPool pool = new EndpointPool(List.of(eu, us));
+
+        ((MockService) eu.getService()).down = true;
+        ((MockService) us.getService()).down = true;
+        assertFalse(pool.probe(0));
+        assertFalse(pool.probe(0));
+
+        // the endpoint that failed first is retried
+        assertSame(eu, pool.select());
+    }
+}
@@ -0,0 +1,62 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastCdcTest {
+
+    private static List<String> split(byte[] data) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        List<String> chunks = new ArrayList<>();
+        long[] next = {0};
+        new FastCdc().split(new ByteArrayInputStream(data), (buffer, offset, length, position) -> {
+            if (position != next[0]) {
+                throw new IOException("Unexpected position: " + position);
+            }
+            assertTrue(length <= FastCdc.DEFAULT_MAX_SIZE);
+            next[0] += length;
+            digest.update(buffer, offset, length);
+            chunks.add(HexFormat.of().formatHex(digest.digest()));
+        });
+        assertEquals(data.length, next[0]);
+        return chunks;
+    }
+
+    @Test
+    void testInsertionKeepsChunks() throws Exception {
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random(7).nextBytes(data);
+
+        // a few bytes inserted in the middle of the file
+        byte[] changed = new byte[data.length + 100];
+        int at = data.length / 2;
+        System.arraycopy(data, 0, changed, 0, at);
+        System.arraycopy(data, at, changed, at + 100, data.length - at);
+
+        List<String> before = split(data);
+        List<String> after = split(changed);
+        Set<String> known = new HashSet<>(before);
+        long reused = after.stream().filter(known::contains).count();
+
+        assertEquals(before, split(data));
+        assertTrue(before.size() > 50 && before.size() < 300, "Chunks: " + before.size());
+        assertTrue(after.size() - reused <= 3, "New chunks: " + (after.size() - reused));
+    }
+
+    @Test
+    void testSmallFile() throws Exception {
+        assertEquals(1, split(new byte[100]).size());
+        assertEquals(0, split(new byte[0]).size());
+    }
+}
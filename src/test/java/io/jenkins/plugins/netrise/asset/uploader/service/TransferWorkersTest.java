@@ -0,0 +1,95 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferWorkersTest {
+
+    @Test
+    public void testTransfer_ConcurrencyIsLimited() throws Exception {
+        TransferWorkers workers = new TransferWorkers(2, 2, Long.MAX_VALUE);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        ExecutorService executors = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int n = i;
+                results.add(executors.submit(() -> workers.transfer(100, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(50);
+                    running.decrementAndGet();
+                    return n;
+                })));
+            }
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executors.shutdownNow();
+        }
+        assertEquals(2, maxRunning.get());
+        // the worker is released right after the result is returned
+        waitFor(() -> workers.getRunning() == 0);
+    }
+
+    @Test
+    public void testTransfer_SmallFilesPassLargeOnes() throws Exception {
+        TransferWorkers workers = new TransferWorkers(2, 1, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executors = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> large1 = executors.submit(() -> workers.transfer(5000, () -> {
+                started.add("large1");
+                return release.await(10, TimeUnit.SECONDS);
+            }));
+            waitFor(() -> workers.getRunning() == 1);
+            Future<?> large2 = executors.submit(() -> workers.transfer(5000, () -> started.add("large2")));
+            waitFor(() -> workers.getWaiting() == 1);
+
+            // the second large file waits for the first one, the small file doesn't
+            workers.transfer(10, () -> started.add("small"));
+            assertEquals(List.of("large1", "small"), started);
+
+            release.countDown();
+            large1.get(10, TimeUnit.SECONDS);
+            large2.get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("large1", "small", "large2"), started);
+        } finally {
+            executors.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTransfer_Error() {
+        TransferWorkers workers = new TransferWorkers(1, 1, 1000);
+        IOException e = assertThrows(IOException.class, () -> workers.transfer(10, () -> {
+            throw new IOException("Disk error");
+        }));
+        assertEquals("Disk error", e.getMessage());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "Timeout");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeHasherTest {
+
+    @TempDir
+    Path tmp;
+
+    private static byte[] sha256(byte[] data, int offset, int length) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    private static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    @Test
+    void testFixedLeaves() throws Exception {
+        byte[] data = new byte[3 * 1000 + 10];
+        new Random(11).nextBytes(data);
+        Path file = Files.write(tmp.resolve("image.bin"), data);
+
+        // 4 leaves in 2 windows
+        TreeHasher hasher = new TreeHasher(1000, 2000, new ForkJoinPool(3));
+        TreeHasher.Digest digest = hasher.digest(file, true);
+
+        assertEquals(data.length, digest.size());
+        assertEquals(hex(sha256(data, 0, data.length)), digest.sha256());
+        assertEquals(4, digest.leaves().size());
+        assertEquals(hex(sha256(data, 3000, 10)), digest.leaves().get(3));
+
+        byte[][] leaves = new byte[4][];
+        for (int i = 0; i < 4; i++) {
+            leaves[i] = sha256(data, i * 1000, Math.min(1000, data.length - i * 1000));
+        }
+        assertEquals(hex(TreeHasher.root(leaves)), digest.treeSha256());
+        // the tree doesn't depend on the windows and the threads
+        assertEquals(digest, new TreeHasher(1000, 1, new ForkJoinPool(1)).digest(file, true));
+        assertNull(hasher.digest(file, false).sha256());
+    }
+
+    @Test
+    void testChunks() throws Exception {
+        byte[] data = new byte[5000];
+        new Random(12).nextBytes(data);
+        Path file = Files.write(tmp.resolve("image.bin"), data);
+
+        TreeHasher.Digest digest = new TreeHasher(1000, 1500, new ForkJoinPool(2))
+                .digest(file, new int[]{700, 2500, 1800}, true);
+
+        assertEquals(hex(sha256(data, 700, 2500)), digest.leaves().get(1));
+        assertEquals(hex(sha256(data, 3200, 1800)), digest.leaves().get(2));
+        assertEquals(hex(sha256(data, 0, data.length)), digest.sha256());
+        assertThrows(IllegalArgumentException.class,
+                () -> new TreeHasher().digest(file, new int[]{700}, false));
+    }
+
+    @Test
+    void testContentDefinedChunks() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(13).nextBytes(data);
+        Path file = Files.write(tmp.resolve("image.bin"), data);
+        FastCdc cdc = new FastCdc(256, 1024, 4096);
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        List<String> leaves = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        cdc.split(new ByteArrayInputStream(data), (buffer, offset, length, position) -> {
+            sha256.update(buffer, offset, length);
+            leaves.add(hex(sha256.digest()));
+            lengths.add(length);
+        });
+
+        // the chunks cross the windows
+        TreeHasher.Digest digest = new TreeHasher(1000, 10_000, new ForkJoinPool(3)).digest(file, cdc, true);
+        assertEquals(leaves, digest.leaves());
+        assertEquals(lengths, digest.lengths());
+        assertEquals(hex(sha256(data, 0, data.length)), digest.sha256());
+        // the same chunks as found first and hashed then
+        int[] chunks = lengths.stream().mapToInt(Integer::intValue).toArray();
+        assertEquals(new TreeHasher(1000, 10_000, new ForkJoinPool(2)).digest(file, chunks, true), digest);
+        // the windows smaller than a max chunk are enlarged
+        assertEquals(digest, new TreeHasher(1000, 1, new ForkJoinPool(1)).digest(file, cdc, true));
+    }
+
+    @Test
+    void testEmptyFile() throws Exception {
+        Path file = Files.write(tmp.resolve("empty"), new byte[0]);
+        String empty = hex(sha256(new byte[0], 0, 0));
+
+        TreeHasher.Digest digest = new TreeHasher().digest(file, true);
+        assertEquals(empty, digest.sha256());
+        assertEquals(empty, digest.treeSha256());
+
+        TreeHasher.Digest chunked = new TreeHasher().digest(file, new FastCdc(), true);
+        assertEquals(empty, chunked.sha256());
+        assertEquals(empty, chunked.treeSha256());
+        assertTrue(chunked.leaves().isEmpty());
+    }
+}
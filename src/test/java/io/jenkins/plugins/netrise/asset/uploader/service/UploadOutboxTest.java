@@ -0,0 +1,156 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadOutboxTest {
+
+    @TempDir
+    Path root;
+
+    private final SubmitAssetInput input = new SubmitAssetInput("Bobby", "Model_1", "001", "Man_1");
+
+    private UploadOutbox.Entry store(UploadOutbox outbox, String id, int size, long created) throws Exception {
+        return store(outbox, id, "image.bin", size, created);
+    }
+
+    private UploadOutbox.Entry store(UploadOutbox outbox, String id, String fileName, int size, long created) throws Exception {
+        Path file = outbox.reserve(id, size, 1000);
+        assertNotNull(file);
+        Files.write(file, new byte[size]);
+        UploadOutbox.Entry entry = new UploadOutbox.Entry(id, "job#1", fileName, input, null, 0, created, null, created);
+        outbox.save(entry);
+        return entry;
+    }
+
+    @Test
+    void testSaveAndList() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        assertTrue(outbox.list().isEmpty());
+
+        store(outbox, "b", 10, 2000);
+        store(outbox, "a", 10, 1000);
+        // interrupted enqueue isn't listed
+        assertNotNull(outbox.reserve("c", 10, 1000));
+
+        List<UploadOutbox.Entry> entries = new UploadOutbox(root).list();
+        assertEquals(2, entries.size());
+        assertEquals("a", entries.get(0).id());
+        assertEquals("b", entries.get(1).id());
+        assertEquals(input, entries.get(0).input());
+        assertEquals(root.resolve("a").resolve(UploadOutbox.PAYLOAD_FILE), outbox.getFile(entries.get(0)));
+
+        outbox.remove(entries.get(0));
+        assertEquals(List.of(entries.get(1)), outbox.list());
+    }
+
+    @Test
+    void testFileNameOfDescriptor() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        // the artifact name doesn't clash with the descriptor
+        UploadOutbox.Entry entry = store(outbox, "a", UploadOutbox.ENTRY_FILE, 10, 1000);
+        outbox.save(entry.failed("Upload error", 5000));
+
+        List<UploadOutbox.Entry> entries = outbox.list();
+        assertEquals(1, entries.size());
+        assertEquals(UploadOutbox.ENTRY_FILE, entries.get(0).fileName());
+        assertEquals(1, entries.get(0).attempts());
+        assertEquals(10, Files.size(outbox.getFile(entries.get(0))));
+    }
+
+    @Test
+    void testFailedAttemptIsSaved() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        UploadOutbox.Entry entry = store(outbox, "a", 10, 1000);
+
+        outbox.save(entry.failed("Upload error", 5000));
+        UploadOutbox.Entry saved = outbox.list().get(0);
+        assertEquals(1, saved.attempts());
+        assertEquals(5000, saved.nextAttempt());
+        assertEquals("Upload error", saved.lastError());
+        assertEquals(1000, saved.created());
+    }
+
+    @Test
+    void testQuota() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        assertNotNull(outbox.reserve("a", 600, 1000));
+        // the reserved space counts while the file is being stored
+        assertNull(outbox.reserve("b", 500, 1000));
+        assertEquals(600, outbox.size());
+
+        Files.write(root.resolve("a").resolve(UploadOutbox.PAYLOAD_FILE), new byte[100]);
+        outbox.save(UploadOutbox.Entry.create("a", null, "image.bin", input, null));
+        long stored = outbox.size();
+        assertTrue(stored > 100 && stored < 600);
+        assertNotNull(outbox.reserve("b", 500, 1000));
+
+        outbox.release("b");
+        assertFalse(Files.exists(root.resolve("b")));
+        assertEquals(stored, outbox.size());
+    }
+
+    @Test
+    void testFailedEntriesAreNotCounted() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        UploadOutbox.Entry entry = store(outbox, "a", 900, 1000);
+        assertNull(outbox.reserve("b", 500, 1000));
+
+        outbox.fail(entry);
+        assertTrue(outbox.list().isEmpty());
+        assertTrue(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("a").resolve(UploadOutbox.PAYLOAD_FILE)));
+        assertEquals(0, outbox.size());
+        assertNotNull(outbox.reserve("b", 500, 1000));
+    }
+
+    @Test
+    void testExpireFailed() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            String id = "e" + i;
+            outbox.fail(store(outbox, id, 10, i));
+            // failed 0, 1, 2 and 3 hours ago
+            Files.setLastModifiedTime(root.resolve(UploadOutbox.FAILED_DIR).resolve(id).resolve(UploadOutbox.ENTRY_FILE),
+                    FileTime.fromMillis(now - i * 3_600_000L));
+        }
+
+        outbox.expireFailed(150 * 60_000, 10);
+        assertTrue(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("e2")));
+        assertFalse(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("e3")));
+
+        outbox.expireFailed(150 * 60_000, 1);
+        assertTrue(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("e0")));
+        assertFalse(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("e1")));
+        assertFalse(Files.exists(root.resolve(UploadOutbox.FAILED_DIR).resolve("e2")));
+    }
+
+    @Test
+    void testCleanupRemovesOrphans() throws Exception {
+        UploadOutbox outbox = new UploadOutbox(root);
+        store(outbox, "a", 10, 1000);
+        // interrupted enqueue
+        Files.createDirectories(root.resolve("b"));
+        Files.write(root.resolve("b").resolve(UploadOutbox.PAYLOAD_FILE), new byte[10]);
+        // the file is being stored
+        assertNotNull(outbox.reserve("c", 10, 1000));
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        for (String id : List.of("a", "b", "c")) {
+            Files.setLastModifiedTime(root.resolve(id), old);
+        }
+
+        outbox.cleanup(60_000);
+        assertTrue(Files.exists(root.resolve("a")));
+        assertFalse(Files.exists(root.resolve("b")));
+        assertTrue(Files.exists(root.resolve("c")));
+        outbox.release("c");
+    }
+}
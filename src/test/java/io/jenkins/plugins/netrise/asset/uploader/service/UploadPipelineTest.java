@@ -0,0 +1,137 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetInput;
+import io.jenkins.plugins.netrise.asset.uploader.model.SubmitAssetResponse;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadPipelineTest {
+
+    static class MockService extends UploadService {
+        final CountDownLatch submits;
+        volatile boolean submittedAhead;
+        final List<Deadline> deadlines = new CopyOnWriteArrayList<>();
+
+        MockService(int files) {
+            super(URI.create("http://localhost"), URI.create("http://localhost/token"), "org", "id", "secret", "aud");
+            submits = new CountDownLatch(files);
+        }
+
+        @Override
+        public SubmitAssetResponse submit(String fileName, SubmitAssetInput input, Deadline deadline) {
+            deadlines.add(deadline);
+            if (fileName.startsWith("bad-submit")) {
+                throw new UploadException("rejected");
+            }
+            if (fileName.startsWith("error-submit")) {
+                throw new Error("submit is broken");
+            }
+            submits.countDown();
+            return new SubmitAssetResponse("id-" + fileName, "http://storage/" + fileName);
+        }
+
+        @Override
+        public TransferResult transfer(String fileName, URI uploadUri, Transfer transfer, Deadline deadline) {
+            deadlines.add(deadline);
+            try {
+                if ("a".equals(fileName)) {
+                    // the next file is submitted while the first one is sent
+                    submittedAhead = submits.await(5, TimeUnit.SECONDS);
+                }
+                return transfer.transfer(uploadUri);
+            } catch (Exception e) {
+                throw new UploadException(e.getMessage());
+            }
+        }
+
+        @Override
+        public String waitForAsset(String uploadId, Deadline deadline) {
+            deadlines.add(deadline);
+            if (uploadId.startsWith("id-error-status")) {
+                throw new Error("status is broken");
+            }
+            return "asset-" + uploadId;
+        }
+    }
+
+    private static List<UploadPipeline.Job> jobs(String... names) {
+        List<UploadPipeline.Job> jobs = new ArrayList<>();
+        for (String name : names) {
+            jobs.add(new UploadPipeline.Job(name, new SubmitAssetInput(name, null, null, null), uri -> {
+                if (name.startsWith("bad-transfer")) {
+                    throw new java.io.IOException("broken pipe");
+                }
+                return new TransferResult(200, 1, "sha", null, null, 1);
+            }));
+        }
+        return jobs;
+    }
+
+    @Test
+    void testSubmitsOverlapTransfer() throws Exception {
+        MockService service = new MockService(2);
+
+        List<UploadPipeline.Result> results = new UploadPipeline(service, 2, 1).upload(jobs("a", "b"));
+
+        assertTrue(service.submittedAhead);
+        assertEquals("asset-id-a", results.get(0).assetId());
+        assertEquals("asset-id-b", results.get(1).assetId());
+        assertTrue(service.deadlines.stream().noneMatch(Deadline::isDefined));
+    }
+
+    @Test
+    void testDeadlineIsPassedToStages() throws Exception {
+        MockService service = new MockService(0);
+        Deadline a = Deadline.after(Duration.ofMinutes(1));
+        Deadline b = Deadline.after(Duration.ofMinutes(1));
+        Iterator<Deadline> deadlines = List.of(a, b).iterator();
+
+        List<UploadPipeline.Result> results = new UploadPipeline(service, 1, 1).upload(jobs("a", "b"), deadlines::next);
+
+        assertTrue(results.get(1).isSuccessful());
+        // submit, transfer and status check of each file
+        assertEquals(6, service.deadlines.size());
+        assertEquals(3, service.deadlines.stream().filter(d -> d == a).count());
+        assertEquals(3, service.deadlines.stream().filter(d -> d == b).count());
+    }
+
+    @Test
+    void testFailureDoesNotStopOtherFiles() throws Exception {
+        MockService service = new MockService(0);
+
+        List<UploadPipeline.Result> results = new UploadPipeline(service).upload(
+                jobs("bad-submit", "c", "bad-transfer", "d"));
+
+        assertEquals(4, results.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.get(1).isSuccessful());
+        assertFalse(results.get(2).isSuccessful());
+        assertNotNull(results.get(2).error());
+        assertEquals("asset-id-d", results.get(3).assetId());
+    }
+
+    @Test
+    void testStageErrorStopsPipeline() {
+        MockService service = new MockService(0);
+
+        Error submit = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(Error.class,
+                () -> new UploadPipeline(service).upload(jobs("c", "error-submit", "d"))));
+        assertEquals("submit is broken", submit.getMessage());
+
+        // the only status check fails while the transfer waits for the queue
+        Error status = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(Error.class,
+                () -> new UploadPipeline(service, 1, 1).upload(jobs("error-status", "c", "d", "e", "f"))));
+        assertEquals("status is broken", status.getMessage());
+    }
+}
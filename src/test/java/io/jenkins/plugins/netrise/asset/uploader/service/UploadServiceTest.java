@@ -0,0 +1,63 @@
+package io.jenkins.plugins.netrise.asset.uploader.service;
+
+import io.jenkins.plugins.netrise.asset.uploader.api.TransferResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadServiceTest {
+
+    private final UploadService service = new UploadService(URI.create("http://localhost"),
+            URI.create("http://localhost/token"), "org", "id", "secret", "aud");
+    private final URI uploadUri = URI.create("http://storage/a");
+
+    @Test
+    void testTransferIsCancelledByDeadline() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        UploadException error = assertThrows(UploadException.class, () -> service.transfer("a", uploadUri, uri -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                throw e;
+            }
+            return new TransferResult(200, 1, "sha", null, null, 1);
+        }, Deadline.after(Duration.ofMillis(200))));
+
+        assertEquals("The upload deadline is exceeded: transfer", error.getMessage());
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        // the caller isn't interrupted
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    void testTransferWithinDeadline() {
+        long caller = Thread.currentThread().getId();
+        AtomicLong owner = new AtomicLong();
+        TransferResult result = service.transfer("a", uploadUri, uri -> {
+            owner.set(UploadService.getOwnerThreadId(Thread.currentThread().getId()));
+            return new TransferResult(200, 1, "sha", null, null, 1);
+        }, Deadline.after(Duration.ofMinutes(1)));
+
+        assertTrue(result.isSuccessful());
+        // the transfer logs go with the caller ones
+        assertEquals(caller, owner.get());
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    void testTransferErrorIsNotDeadline() {
+        UploadException error = assertThrows(UploadException.class, () -> service.transfer("a", uploadUri, uri -> {
+            throw new IOException("broken pipe");
+        }, Deadline.after(Duration.ofMinutes(1))));
+
+        assertEquals("Couldn't upload the file to the server", error.getMessage());
+    }
+}